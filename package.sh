@@ -8,6 +8,8 @@ APP_NAME="PhotoViewer"
 APP_VERSION="1.0.0"
 MAIN_CLASS="com.photoviewer.AppLauncher"
 MAIN_JAR="target/photoviewer-1.0.0.jar"
+# Default runtime modules plus the Vector API used by the SIMD pixel kernels
+APP_MODULES="ALL-DEFAULT,jdk.incubator.vector"
 
 echo "Building PhotoViewer native installer..."
 
@@ -37,6 +39,8 @@ case "$OS_TYPE" in
             --name "$APP_NAME" \
             --main-jar photoviewer-1.0.0.jar \
             --main-class "$MAIN_CLASS" \
+            --add-modules "$APP_MODULES" \
+            --java-options "--add-modules jdk.incubator.vector" \
             --type exe \
             --app-version "$APP_VERSION" \
             --vendor "PhotoViewer" \
@@ -55,6 +59,8 @@ case "$OS_TYPE" in
             --name "$APP_NAME" \
             --main-jar photoviewer-1.0.0.jar \
             --main-class "$MAIN_CLASS" \
+            --add-modules "$APP_MODULES" \
+            --java-options "--add-modules jdk.incubator.vector" \
             --type dmg \
             --app-version "$APP_VERSION" \
             --vendor "PhotoViewer" \
@@ -72,6 +78,8 @@ case "$OS_TYPE" in
             --name "$APP_NAME" \
             --main-jar photoviewer-1.0.0.jar \
             --main-class "$MAIN_CLASS" \
+            --add-modules "$APP_MODULES" \
+            --java-options "--add-modules jdk.incubator.vector" \
             --type deb \
             --app-version "$APP_VERSION" \
             --vendor "PhotoViewer" \
@@ -85,6 +93,8 @@ case "$OS_TYPE" in
             --name "$APP_NAME" \
             --main-jar photoviewer-1.0.0.jar \
             --main-class "$MAIN_CLASS" \
+            --add-modules "$APP_MODULES" \
+            --java-options "--add-modules jdk.incubator.vector" \
             --type rpm \
             --app-version "$APP_VERSION" \
             --vendor "PhotoViewer" \
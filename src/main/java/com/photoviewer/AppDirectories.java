@@ -0,0 +1,22 @@
+package com.photoviewer;
+
+import java.io.File;
+
+/**
+ * Locations of files the application keeps between sessions.
+ */
+public class AppDirectories {
+
+    /**
+     * Get the per-user data directory (~/.photoviewer, or the directory
+     * given by the photoviewer.home system property), creating it if needed.
+     */
+    public static File getDataDirectory() {
+        String override = System.getProperty("photoviewer.home");
+        File dir = override != null ? new File(override) : new File(System.getProperty("user.home"), ".photoviewer");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Could not create data directory: " + dir);
+        }
+        return dir;
+    }
+}
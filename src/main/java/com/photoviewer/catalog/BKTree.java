@@ -0,0 +1,117 @@
+package com.photoviewer.catalog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Burkhard-Keller tree over 64-bit hashes with Hamming distance, for finding
+ * all values within a distance of a query without scanning every entry.
+ * Not thread-safe.
+ */
+public class BKTree<T> {
+    private Node<T> root;
+    private int size;
+
+    private static class Node<T> {
+        final long hash;
+        final List<T> values = new ArrayList<>(1);
+        // Children keyed by their distance from this node, in parallel arrays
+        int[] distances = new int[0];
+        Node<T>[] children;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        Node<T> child(int distance) {
+            for (int i = 0; i < distances.length; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void addChild(int distance, Node<T> child) {
+            int n = distances.length;
+            distances = Arrays.copyOf(distances, n + 1);
+            children = children == null ? (Node<T>[]) new Node<?>[1] : Arrays.copyOf(children, n + 1);
+            distances[n] = distance;
+            children[n] = child;
+        }
+    }
+
+    /**
+     * A value found by {@link #search}, with its distance from the query.
+     */
+    public static class Match<T> {
+        public final T value;
+        public final int distance;
+
+        Match(T value, int distance) {
+            this.value = value;
+            this.distance = distance;
+        }
+    }
+
+    public void add(long hash, T value) {
+        size++;
+        if (root == null) {
+            root = new Node<>(hash);
+            root.values.add(value);
+            return;
+        }
+        Node<T> node = root;
+        while (true) {
+            int d = Long.bitCount(node.hash ^ hash);
+            if (d == 0) {
+                node.values.add(value);
+                return;
+            }
+            Node<T> child = node.child(d);
+            if (child == null) {
+                child = new Node<>(hash);
+                child.values.add(value);
+                node.addChild(d, child);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Find all values whose hash is within maxDistance bits of the query.
+     */
+    public List<Match<T>> search(long hash, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            int d = Long.bitCount(node.hash ^ hash);
+            if (d <= maxDistance) {
+                for (T value : node.values) {
+                    matches.add(new Match<>(value, d));
+                }
+            }
+            // Triangle inequality: only children in [d - max, d + max] can match
+            for (int i = 0; i < node.distances.length; i++) {
+                if (Math.abs(node.distances[i] - d) <= maxDistance) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return size;
+    }
+}
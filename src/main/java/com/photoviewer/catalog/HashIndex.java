@@ -0,0 +1,217 @@
+package com.photoviewer.catalog;
+
+import com.photoviewer.image.ImageManager;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent index of perceptual hashes for finding duplicate and
+ * near-duplicate images across all folders indexed so far.
+ * <p>
+ * The index file is a {@link RecordLog} of entries. Lookups use a BK-tree
+ * over the pHash values. All file and tree work runs on a single background
+ * thread; hashing of new files is spread over the common fork-join pool.
+ */
+public class HashIndex {
+    private static final int MAGIC = 0x50564849; // "PVHI"
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final BKTree<Entry> tree = new BKTree<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "hash-index");
+        t.setDaemon(true);
+        return t;
+    });
+    // Only accessed on the executor thread
+    private final RecordLog<Entry> log;
+
+    /**
+     * An indexed file and its fingerprints.
+     */
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long modified;
+        public final long dHash;
+        public final long pHash;
+
+        Entry(String path, long size, long modified, long dHash, long pHash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.dHash = dHash;
+            this.pHash = pHash;
+        }
+
+        boolean matches(File f) {
+            return f.length() == size && f.lastModified() == modified;
+        }
+    }
+
+    /**
+     * A file similar to the query, with the pHash and dHash distances.
+     */
+    public static class Match {
+        public final File file;
+        public final int distance;
+        public final int dHashDistance;
+
+        Match(File file, int distance, int dHashDistance) {
+            this.file = file;
+            this.distance = distance;
+            this.dHashDistance = dHashDistance;
+        }
+    }
+
+    /**
+     * Open an index stored in the given file; it is loaded in the
+     * background.
+     */
+    public HashIndex(File file) {
+        this.log = new RecordLog<>(file, MAGIC, "hash index", new EntryCodec());
+        executor.execute(this::load);
+    }
+
+    /**
+     * Number of files in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Hash all images in a folder that are not indexed yet or changed since.
+     * Completes with the number of files hashed.
+     */
+    public CompletableFuture<Integer> indexFolder(File folder) {
+        return CompletableFuture.supplyAsync(() -> {
+            File[] files = folder.listFiles((dir, name) -> ImageManager.isSupportedFile(name));
+            if (files == null) {
+                return 0;
+            }
+            List<File> pending = new ArrayList<>();
+            for (File f : files) {
+                Entry entry = entries.get(f.getAbsolutePath());
+                if (entry == null || !entry.matches(f)) {
+                    pending.add(f);
+                }
+            }
+
+            List<Entry> hashed = new ArrayList<>();
+            pending.parallelStream().forEach(f -> {
+                Entry entry = hashFile(f);
+                if (entry != null) {
+                    synchronized (hashed) {
+                        hashed.add(entry);
+                    }
+                }
+            });
+            for (Entry entry : hashed) {
+                add(entry);
+            }
+            flush();
+            return hashed.size();
+        }, executor);
+    }
+
+    /**
+     * Find indexed images similar to a file, closest first. The file itself
+     * is hashed if it is not in the index.
+     *
+     * @param maxDistance Maximum number of differing pHash bits; about 10
+     *                    finds resized and re-encoded copies and small edits
+     */
+    public CompletableFuture<List<Match>> findSimilar(File query, int maxDistance) {
+        return CompletableFuture.supplyAsync(() -> {
+            String path = query.getAbsolutePath();
+            Entry target = entries.get(path);
+            if (target == null || !target.matches(query)) {
+                target = hashFile(query);
+                if (target == null) {
+                    return new ArrayList<Match>();
+                }
+                add(target);
+                flush();
+            }
+
+            List<Match> matches = new ArrayList<>();
+            for (BKTree.Match<Entry> m : tree.search(target.pHash, maxDistance)) {
+                Entry entry = m.value;
+                // Skip the query itself and records replaced by newer ones
+                if (entry.path.equals(path) || entries.get(entry.path) != entry) {
+                    continue;
+                }
+                File f = new File(entry.path);
+                if (f.isFile()) {
+                    matches.add(new Match(f, m.distance, ImageHasher.distance(entry.dHash, target.dHash)));
+                }
+            }
+            matches.sort(Comparator.<Match>comparingInt(m -> m.distance).thenComparingInt(m -> m.dHashDistance));
+            return matches;
+        }, executor);
+    }
+
+    private Entry hashFile(File f) {
+        try {
+            long size = f.length();
+            long modified = f.lastModified();
+            long[] hashes = ImageHasher.hash(f);
+            if (hashes == null) {
+                return null;
+            }
+            return new Entry(f.getAbsolutePath(), size, modified, hashes[0], hashes[1]);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error hashing " + f + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.path, entry);
+        tree.add(entry.pHash, entry);
+        log.append(entry);
+    }
+
+    private void flush() {
+        log.flush();
+    }
+
+    private void load() {
+        log.load(entries);
+        for (Entry entry : entries.values()) {
+            tree.add(entry.pHash, entry);
+        }
+    }
+
+    private static class EntryCodec implements RecordLog.Codec<Entry> {
+        @Override
+        public Entry read(DataInputStream in) throws IOException {
+            return new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+
+        @Override
+        public void write(DataOutputStream out, Entry entry) throws IOException {
+            out.writeUTF(entry.path);
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeLong(entry.dHash);
+            out.writeLong(entry.pHash);
+        }
+
+        @Override
+        public String path(Entry entry) {
+            return entry.path;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.photoviewer.catalog;
+
+import com.photoviewer.image.DecoderRegistry;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Computes perceptual fingerprints of image files: a difference hash (dHash)
+ * and a DCT-based hash (pHash), 64 bits each. Images are decoded with source
+ * subsampling so only a small fraction of the pixels is ever materialized.
+ */
+public class ImageHasher {
+    // Smallest side of the subsampled decode; enough detail for a 32x32 grid
+    private static final int DECODE_SIZE = 128;
+    private static final int DCT_SIZE = 32;
+    private static final double[][] DCT_COEFFICIENTS = dctCoefficients();
+
+    /**
+     * Hash an image file, or return null if it cannot be decoded.
+     */
+    public static long[] hash(File file) throws IOException {
+        BufferedImage image = decodeSubsampled(file, DECODE_SIZE);
+        if (image == null) {
+            return null;
+        }
+        return new long[] { dHash(image), pHash(image) };
+    }
+
+    /**
+     * Decode the first image of a file, skipping pixels so that the smaller
+     * side is roughly the target size (never smaller).
+     */
+    public static BufferedImage decodeSubsampled(File file, int targetSize) throws IOException {
+        return DecoderRegistry.get().decode(file, targetSize);
+    }
+
+    /**
+     * Number of differing bits between two hashes.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Difference hash: one bit per horizontally adjacent pair of cells in a
+     * 9x8 luminance grid, set where brightness increases.
+     */
+    static long dHash(BufferedImage image) {
+        double[] grid = luminanceGrid(image, 9, 8);
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                hash <<= 1;
+                if (grid[y * 9 + x + 1] > grid[y * 9 + x]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * DCT hash: the lowest 8x8 frequencies of a 32x32 luminance grid,
+     * thresholded at their median (the DC term is left out of the median).
+     */
+    static long pHash(BufferedImage image) {
+        double[] grid = luminanceGrid(image, DCT_SIZE, DCT_SIZE);
+
+        // Separable 2D DCT-II, only the first 8 frequencies in each direction
+        double[] rows = new double[DCT_SIZE * 8];
+        for (int y = 0; y < DCT_SIZE; y++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int x = 0; x < DCT_SIZE; x++) {
+                    sum += DCT_COEFFICIENTS[u][x] * grid[y * DCT_SIZE + x];
+                }
+                rows[y * 8 + u] = sum;
+            }
+        }
+        double[] freq = new double[64];
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int y = 0; y < DCT_SIZE; y++) {
+                    sum += DCT_COEFFICIENTS[v][y] * rows[y * 8 + u];
+                }
+                freq[v * 8 + u] = sum;
+            }
+        }
+
+        double[] sorted = Arrays.copyOfRange(freq, 1, 64);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (int i = 0; i < 64; i++) {
+            hash <<= 1;
+            if (freq[i] > median) {
+                hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Average luminance of each cell of a grid laid over the image.
+     */
+    private static double[] luminanceGrid(BufferedImage image, int columns, int rows) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] sums = new double[columns * rows];
+        int[] counts = new int[columns * rows];
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, line, 0, width);
+            int cellRow = Math.min(rows - 1, y * rows / height) * columns;
+            for (int x = 0; x < width; x++) {
+                int p = line[x];
+                int cell = cellRow + Math.min(columns - 1, x * columns / width);
+                sums[cell] += ((p >> 16) & 0xFF) * 0.299 + ((p >> 8) & 0xFF) * 0.587 + (p & 0xFF) * 0.114;
+                counts[cell]++;
+            }
+        }
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = counts[i] == 0 ? 0 : sums[i] / counts[i];
+        }
+        return sums;
+    }
+
+    private static double[][] dctCoefficients() {
+        double[][] c = new double[8][DCT_SIZE];
+        for (int u = 0; u < 8; u++) {
+            for (int x = 0; x < DCT_SIZE; x++) {
+                c[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,250 @@
+package com.photoviewer.catalog;
+
+import com.photoviewer.image.ExifData;
+import com.photoviewer.image.ExifReader;
+import com.photoviewer.image.ImageManager;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Persistent catalog of per-file metadata (size, modification time,
+ * dimensions, capture date and EXIF orientation) used to sort and filter
+ * folders without opening the images.
+ * <p>
+ * Files are scanned by reading headers only: dimensions come from the
+ * ImageReader without decoding pixels and EXIF values from the APP1 segment.
+ * Only files that are new or whose size or modification time changed are
+ * scanned again. The catalog file is a {@link RecordLog} of entries.
+ */
+public class MetadataCatalog {
+    private static final int MAGIC = 0x5056434D; // "PVCM"
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metadata-catalog");
+        t.setDaemon(true);
+        return t;
+    });
+    // Only accessed on the executor thread
+    private final RecordLog<Entry> log;
+
+    /**
+     * Ways to order the files of a folder.
+     */
+    public enum SortKey {
+        NAME, CAPTURE_DATE, MODIFIED, FILE_SIZE, PIXELS
+    }
+
+    /**
+     * Catalogued metadata of one file.
+     */
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long modified;
+        public final int width;
+        public final int height;
+        // Capture time as seconds since the epoch in local time, or NO_DATE
+        final long captureTime;
+        public final int orientation;
+
+        Entry(String path, long size, long modified, int width, int height, long captureTime, int orientation) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.width = width;
+            this.height = height;
+            this.captureTime = captureTime;
+            this.orientation = orientation;
+        }
+
+        boolean matches(File f) {
+            return f.length() == size && f.lastModified() == modified;
+        }
+
+        public LocalDateTime getCaptureTime() {
+            return captureTime == NO_DATE ? null : LocalDateTime.ofEpochSecond(captureTime, 0, ZoneOffset.UTC);
+        }
+
+        /**
+         * Whether the image is taller than wide once its orientation is
+         * applied.
+         */
+        public boolean isPortrait() {
+            boolean swapped = orientation >= 5 && orientation <= 8;
+            return swapped ? width > height : height > width;
+        }
+    }
+
+    /**
+     * Open a catalog stored in the given file; it is loaded in the
+     * background.
+     */
+    public MetadataCatalog(File file) {
+        this.log = new RecordLog<>(file, MAGIC, "catalog", new EntryCodec());
+        executor.execute(() -> log.load(entries));
+    }
+
+    /**
+     * Get the catalogued metadata of a file, or null if it has not been
+     * scanned.
+     */
+    public Entry get(File f) {
+        return entries.get(f.getAbsolutePath());
+    }
+
+    /**
+     * Scan the images of a folder that are new or changed since they were
+     * catalogued, in parallel. Completes with the number of files scanned.
+     */
+    public CompletableFuture<Integer> refreshFolder(File folder) {
+        return CompletableFuture.supplyAsync(() -> {
+            File[] files = folder.listFiles((dir, name) -> ImageManager.isSupportedFile(name));
+            if (files == null) {
+                return 0;
+            }
+            List<File> pending = new ArrayList<>();
+            for (File f : files) {
+                Entry entry = get(f);
+                if (entry == null || !entry.matches(f)) {
+                    pending.add(f);
+                }
+            }
+
+            List<Entry> scanned = new ArrayList<>();
+            pending.parallelStream().forEach(f -> {
+                Entry entry = scan(f);
+                if (entry != null) {
+                    synchronized (scanned) {
+                        scanned.add(entry);
+                    }
+                }
+            });
+            for (Entry entry : scanned) {
+                entries.put(entry.path, entry);
+                log.append(entry);
+            }
+            log.flush();
+            return scanned.size();
+        }, executor);
+    }
+
+    /**
+     * Get the catalogued field files are ordered by. The catalog changes
+     * while folders are scanned, so read it once per file before sorting,
+     * with the file name breaking ties.
+     */
+    public ToLongFunction<File> sortKey(SortKey key) {
+        switch (key) {
+            case CAPTURE_DATE:
+                return f -> {
+                    Entry e = get(f);
+                    return e == null || e.captureTime == NO_DATE ? Long.MAX_VALUE : e.captureTime;
+                };
+            case MODIFIED:
+                return f -> {
+                    Entry e = get(f);
+                    return e == null ? f.lastModified() : e.modified;
+                };
+            case FILE_SIZE:
+                return f -> {
+                    Entry e = get(f);
+                    return e == null ? f.length() : e.size;
+                };
+            case PIXELS:
+                return f -> {
+                    Entry e = get(f);
+                    return e == null ? 0 : (long) e.width * e.height;
+                };
+            default:
+                return f -> 0;
+        }
+    }
+
+    /**
+     * Accept files whose displayed shape is portrait (or landscape, if
+     * false). Files not yet scanned are accepted.
+     */
+    public Predicate<File> orientationFilter(boolean portrait) {
+        return f -> {
+            Entry e = get(f);
+            return e == null || e.width == e.height || e.isPortrait() == portrait;
+        };
+    }
+
+    /**
+     * Read the metadata of one file from its headers.
+     */
+    private static Entry scan(File f) {
+        long size = f.length();
+        long modified = f.lastModified();
+        int width = 0;
+        int height = 0;
+        try (ImageInputStream input = ImageIO.createImageInputStream(f)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+
+            ExifData exif = ExifReader.read(f);
+            LocalDateTime captured = exif.getCaptureTime();
+            long captureTime = captured == null ? NO_DATE : captured.toEpochSecond(ZoneOffset.UTC);
+            return new Entry(f.getAbsolutePath(), size, modified, width, height, captureTime,
+                    exif.getOrientation());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error scanning " + f + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static class EntryCodec implements RecordLog.Codec<Entry> {
+        @Override
+        public Entry read(DataInputStream in) throws IOException {
+            return new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readLong(),
+                    in.readByte());
+        }
+
+        @Override
+        public void write(DataOutputStream out, Entry entry) throws IOException {
+            out.writeUTF(entry.path);
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeInt(entry.width);
+            out.writeInt(entry.height);
+            out.writeLong(entry.captureTime);
+            out.writeByte(entry.orientation);
+        }
+
+        @Override
+        public String path(Entry entry) {
+            return entry.path;
+        }
+    }
+}
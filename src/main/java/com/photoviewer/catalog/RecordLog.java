@@ -0,0 +1,156 @@
+package com.photoviewer.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Append-only log of per-file records, used by {@link HashIndex} and
+ * {@link MetadataCatalog}. The file starts with a magic number and format
+ * version, followed by records; a later record for the same path replaces
+ * an earlier one. The file is rewritten when it is damaged or most of it is
+ * outdated. Not thread-safe: the owner calls it from one thread.
+ */
+class RecordLog<E> {
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Reads and writes the records of one kind of log.
+     */
+    interface Codec<E> {
+        E read(DataInputStream in) throws IOException;
+
+        void write(DataOutputStream out, E entry) throws IOException;
+
+        /**
+         * Path of the file the record describes.
+         */
+        String path(E entry);
+    }
+
+    private final File file;
+    private final int magic;
+    // Name used in error messages
+    private final String name;
+    private final Codec<E> codec;
+    private DataOutputStream log;
+
+    RecordLog(File file, int magic, String name, Codec<E> codec) {
+        this.file = file;
+        this.magic = magic;
+        this.name = name;
+        this.codec = codec;
+    }
+
+    /**
+     * Read all records into a map by path, dropping files that no longer
+     * exist, and compact the file if needed.
+     */
+    void load(Map<String, E> entries) {
+        if (!file.isFile()) {
+            return;
+        }
+        int records = 0;
+        // Set when the file cannot be appended to as it is
+        boolean damaged = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != FORMAT_VERSION) {
+                System.err.println("Replacing " + name + " with unknown format: " + file);
+                damaged = true;
+            }
+            while (!damaged) {
+                in.mark(1);
+                if (in.read() < 0) {
+                    break;
+                }
+                in.reset();
+                try {
+                    E entry = codec.read(in);
+                    records++;
+                    entries.put(codec.path(entry), entry);
+                } catch (EOFException e) {
+                    // A record cut short by a crash
+                    damaged = true;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading " + name + ": " + e.getMessage());
+            damaged = true;
+        }
+
+        // Drop outdated records and deleted files once they dominate the file
+        entries.values().removeIf(entry -> !new File(codec.path(entry)).isFile());
+        if (damaged || records > 2 * entries.size() + 100) {
+            compact(entries);
+        }
+    }
+
+    /**
+     * Append a record; it reaches the file on the next {@link #flush}.
+     */
+    void append(E entry) {
+        try {
+            if (log == null) {
+                boolean fresh = !file.exists() || file.length() == 0;
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (fresh) {
+                    log.writeInt(magic);
+                    log.writeInt(FORMAT_VERSION);
+                }
+            }
+            codec.write(log, entry);
+        } catch (IOException e) {
+            System.err.println("Error writing " + name + ": " + e.getMessage());
+        }
+    }
+
+    void flush() {
+        try {
+            if (log != null) {
+                log.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the file with one record per entry.
+     */
+    private void compact(Map<String, E> entries) {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error writing " + name + ": " + e.getMessage());
+            }
+            log = null;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(magic);
+            out.writeInt(FORMAT_VERSION);
+            for (E entry : entries.values()) {
+                codec.write(out, entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting " + name + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error compacting " + name + ": " + e.getMessage());
+        }
+    }
+}
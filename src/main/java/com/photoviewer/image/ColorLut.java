@@ -0,0 +1,143 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.util.stream.IntStream;
+
+/**
+ * Per-channel 256-entry lookup tables for red, green and blue. Any chain of
+ * tone adjustments compiles into one table per channel, so applying a whole
+ * stack costs a single pass over the pixels. Alpha is never changed.
+ */
+public final class ColorLut {
+    // Rows per parallel work item
+    private static final int CHUNK_ROWS = 64;
+
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+
+    private ColorLut(int[] red, int[] green, int[] blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+
+    /**
+     * Table that maps every value to itself.
+     */
+    public static ColorLut identity() {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = v;
+        }
+        return new ColorLut(table, table, table);
+    }
+
+    /**
+     * Table that inverts every colour channel.
+     */
+    public static ColorLut invert() {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = 255 - v;
+        }
+        return new ColorLut(table, table, table);
+    }
+
+    /**
+     * Compile tone adjustment parameters into a table, evaluating the
+     * adjustment math once per input value.
+     */
+    public static ColorLut of(ToneAdjustment adjustment) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = adjustment.map(v);
+        }
+        return new ColorLut(table, table, table);
+    }
+
+    public boolean isIdentity() {
+        for (int v = 0; v < 256; v++) {
+            if (red[v] != v || green[v] != v || blue[v] != v) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map one ARGB pixel.
+     */
+    private int apply(int argb) {
+        return (argb & 0xFF000000) | (red[(argb >> 16) & 0xFF] << 16)
+                | (green[(argb >> 8) & 0xFF] << 8) | blue[argb & 0xFF];
+    }
+
+    /**
+     * Apply the table to an image in place, in parallel. Packed int images
+     * and interleaved byte images (TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR) are
+     * processed directly in their data buffer; returns false for other
+     * image types, which are left unchanged.
+     */
+    public boolean apply(BufferedImage image) {
+        PackedRaster packed = PackedRaster.of(image);
+        if (packed != null) {
+            forEachChunk(image.getHeight(), (from, to) -> applyRows(packed, from, to));
+            return true;
+        }
+
+        Raster raster = image.getRaster();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel) {
+            PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int pixelStride = model.getPixelStride();
+            int stride = model.getScanlineStride();
+            int offset = raster.getDataBuffer().getOffset()
+                    - raster.getSampleModelTranslateX() * pixelStride
+                    - raster.getSampleModelTranslateY() * stride;
+            int[] bands = model.getBandOffsets();
+            // Band order is R, G, B(, A) regardless of the byte layout
+            int width = image.getWidth();
+            forEachChunk(image.getHeight(), (from, to) -> {
+                for (int y = from; y < to; y++) {
+                    int p = offset + y * stride;
+                    for (int x = 0; x < width; x++, p += pixelStride) {
+                        data[p + bands[0]] = (byte) red[data[p + bands[0]] & 0xFF];
+                        data[p + bands[1]] = (byte) green[data[p + bands[1]] & 0xFF];
+                        data[p + bands[2]] = (byte) blue[data[p + bands[2]] & 0xFF];
+                    }
+                }
+            });
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply the table to rows [fromY, toY) of a packed int image in place.
+     */
+    public void applyRows(PackedRaster raster, int fromY, int toY) {
+        for (int y = fromY; y < toY; y++) {
+            int row = raster.rowOffset(y);
+            for (int i = row; i < row + raster.width; i++) {
+                raster.data[i] = apply(raster.data[i]);
+            }
+        }
+    }
+
+    private interface RowRange {
+        void run(int fromY, int toY);
+    }
+
+    private static void forEachChunk(int height, RowRange task) {
+        int chunks = (height + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        IntStream.range(0, chunks).parallel()
+                .forEach(i -> task.run(i * CHUNK_ROWS, Math.min(height, (i + 1) * CHUNK_ROWS)));
+    }
+}
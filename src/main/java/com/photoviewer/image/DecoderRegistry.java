@@ -0,0 +1,127 @@
+package com.photoviewer.image;
+
+import com.photoviewer.metrics.ImageDecodeEvent;
+import com.photoviewer.metrics.Metrics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Chooses a decoder for each file from its first bytes. Decoders provided
+ * as services come first, then the built-in fast paths, then ImageIO. A
+ * decoder that declines a file or fails on it hands over to the next one.
+ * Decode times are recorded per decoder, in the {@link Metrics} timers
+ * named {@value #TIMER_PREFIX} followed by the decoder name.
+ */
+public class DecoderRegistry {
+    /** Number of leading bytes passed to {@link ImageDecoder#accepts}. */
+    public static final int HEADER_SIZE = 32;
+    public static final String TIMER_PREFIX = "image.decode.";
+
+    private static final DecoderRegistry INSTANCE = new DecoderRegistry();
+
+    private final List<ImageDecoder> decoders = new CopyOnWriteArrayList<>();
+    private final ImageDecoder fallback = new ImageIODecoder();
+
+    private DecoderRegistry() {
+        for (ImageDecoder decoder : ServiceLoader.load(ImageDecoder.class)) {
+            decoders.add(decoder);
+        }
+        decoders.add(new PngDecoder());
+    }
+
+    /**
+     * Get the registry used by the application.
+     */
+    public static DecoderRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Add a decoder ahead of those already registered.
+     */
+    public void register(ImageDecoder decoder) {
+        decoders.add(0, decoder);
+    }
+
+    /**
+     * Decode the first image of a file at full size.
+     *
+     * @return The image, or null if no decoder recognizes the file
+     */
+    public BufferedImage decode(File file) throws IOException {
+        return decode(file, 0);
+    }
+
+    /**
+     * Decode the first image of a file, reduced so that its smaller side is
+     * about the target size if that is greater than 0.
+     *
+     * @return The image, or null if no decoder recognizes the file
+     */
+    public BufferedImage decode(File file, int targetSize) throws IOException {
+        Metrics.Sample sample = Metrics.get().start("image.decode");
+        try {
+            Metrics.get().count("image.decode.bytes", file.length());
+            return decodeWithFirstAccepting(file, targetSize);
+        } finally {
+            sample.stop();
+        }
+    }
+
+    private BufferedImage decodeWithFirstAccepting(File file, int targetSize) throws IOException {
+        byte[] header = readHeader(file);
+        IOException failure = null;
+        List<ImageDecoder> candidates = new ArrayList<>(decoders);
+        candidates.add(fallback);
+        for (ImageDecoder decoder : candidates) {
+            if (!decoder.accepts(header)) {
+                continue;
+            }
+            Metrics.Sample sample = Metrics.get().start(TIMER_PREFIX + decoder.getName());
+            ImageDecodeEvent event = new ImageDecodeEvent();
+            event.begin();
+            BufferedImage image = null;
+            try {
+                image = decoder.decode(file, targetSize);
+                if (image != null) {
+                    sample.stop();
+                    return image;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (decoder != fallback) {
+                    System.err.println(decoder.getName() + " decoder failed on " + file.getName() + ", trying next: "
+                            + e.getMessage());
+                }
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            } finally {
+                event.complete(file, decoder.getName(), targetSize, image);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (isWebp(header)) {
+            throw new IOException("No WebP decoder is installed; add an ImageIO WebP plugin to the classpath");
+        }
+        return null;
+    }
+
+    private static byte[] readHeader(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.readNBytes(HEADER_SIZE);
+        }
+    }
+
+    private static boolean isWebp(byte[] header) {
+        return header.length >= 12 && Arrays.equals(Arrays.copyOfRange(header, 0, 4), "RIFF".getBytes())
+                && Arrays.equals(Arrays.copyOfRange(header, 8, 12), "WEBP".getBytes());
+    }
+}
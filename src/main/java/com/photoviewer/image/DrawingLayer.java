@@ -0,0 +1,135 @@
+package com.photoviewer.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Sparse transparent overlay the size of the image, split into square ARGB
+ * tiles that are only allocated once something is painted on them.
+ * Pixels are non-premultiplied ARGB ints, row-major within each tile.
+ */
+public class DrawingLayer {
+    public static final int TILE_SIZE = 128;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final int[][] tiles;
+    private final boolean[] modified;
+    private int allocatedTiles = 0;
+
+    public DrawingLayer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.tiles = new int[tilesX * tilesY][];
+        this.modified = new boolean[tilesX * tilesY];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    /**
+     * Get a tile for reading, or null if nothing was painted on it.
+     */
+    public int[] getTile(int tx, int ty) {
+        return tiles[ty * tilesX + tx];
+    }
+
+    /**
+     * Get a tile for writing, allocating it if needed, and mark it modified.
+     */
+    public int[] getTileForWrite(int tx, int ty) {
+        int index = ty * tilesX + tx;
+        int[] tile = tiles[index];
+        if (tile == null) {
+            tile = new int[TILE_SIZE * TILE_SIZE];
+            tiles[index] = tile;
+            allocatedTiles++;
+        }
+        modified[index] = true;
+        return tile;
+    }
+
+    /**
+     * Check and clear the modified flag of a tile, used to refresh cached
+     * copies of it.
+     */
+    public boolean takeModified(int tx, int ty) {
+        int index = ty * tilesX + tx;
+        boolean wasModified = modified[index];
+        modified[index] = false;
+        return wasModified;
+    }
+
+    public boolean isEmpty() {
+        return allocatedTiles == 0;
+    }
+
+    public long getAllocatedBytes() {
+        return (long) allocatedTiles * TILE_SIZE * TILE_SIZE * Integer.BYTES;
+    }
+
+    /**
+     * Get the bounding rectangle of all allocated tiles, clipped to the layer,
+     * or null if the layer is empty.
+     */
+    public Rectangle getPaintedBounds() {
+        Rectangle bounds = null;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                if (tiles[ty * tilesX + tx] != null) {
+                    Rectangle tile = getTileBounds(tx, ty);
+                    bounds = bounds == null ? tile : bounds.union(tile);
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Get the area of the layer covered by a tile, clipped to the layer size.
+     */
+    public Rectangle getTileBounds(int tx, int ty) {
+        int x = tx * TILE_SIZE;
+        int y = ty * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    /**
+     * Wrap an allocated tile as a TYPE_INT_ARGB image sharing its pixels.
+     */
+    public BufferedImage getTileImage(int tx, int ty) {
+        int[] tile = getTile(tx, ty);
+        if (tile == null) {
+            return null;
+        }
+        DataBufferInt buffer = new DataBufferInt(tile, tile.length);
+        ColorModel colorModel = ColorModel.getRGBdefault();
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(
+                buffer.getDataType(), TILE_SIZE, TILE_SIZE,
+                new int[] { 0xFF0000, 0xFF00, 0xFF, 0xFF000000 });
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.photoviewer.image;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * EXIF and XMP values read by {@link ExifReader}. Missing values are null
+ * (NaN or 0 for numbers), except the orientation, which defaults to 1
+ * (upright).
+ */
+public class ExifData {
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    // 0 until an EXIF orientation tag is found
+    int orientation;
+    String make;
+    String model;
+    String software;
+    String lensModel;
+    String dateTime;
+    String dateTimeOriginal;
+    double exposureTime = Double.NaN;
+    double fNumber = Double.NaN;
+    double focalLength = Double.NaN;
+    int iso;
+    final Map<String, String> xmp = new LinkedHashMap<>();
+
+    /**
+     * EXIF orientation from 1 to 8 (1 = upright, 6 = rotate 90 degrees
+     * clockwise to display, 3 = 180, 8 = 90 counter-clockwise; 2, 4, 5 and 7
+     * are the mirrored variants). Falls back to the XMP tiff:Orientation.
+     */
+    public int getOrientation() {
+        int value = orientation;
+        if (value == 0 && xmp.containsKey("tiff:Orientation")) {
+            try {
+                value = Integer.parseInt(xmp.get("tiff:Orientation"));
+            } catch (NumberFormatException e) {
+                value = 1;
+            }
+        }
+        return value >= 1 && value <= 8 ? value : 1;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Capture time, falling back to the modification time recorded by the
+     * camera and then to the XMP creation date, or null if none is present
+     * or valid.
+     */
+    public LocalDateTime getCaptureTime() {
+        String value = dateTimeOriginal != null ? dateTimeOriginal : dateTime;
+        try {
+            if (value != null) {
+                return LocalDateTime.parse(value, EXIF_DATE);
+            }
+            String created = xmp.getOrDefault("photoshop:DateCreated", xmp.get("xmp:CreateDate"));
+            if (created != null && created.length() >= 19) {
+                return LocalDateTime.parse(created.substring(0, 19));
+            }
+        } catch (DateTimeParseException e) {
+            // Fall through
+        }
+        return null;
+    }
+
+    /**
+     * Get the XMP properties by qualified name (e.g. "xmp:Rating").
+     */
+    public Map<String, String> getXmpProperties() {
+        return xmp;
+    }
+
+    /**
+     * Human-readable labels and values of everything that was found, for
+     * display.
+     */
+    public Map<String, String> getSummary() {
+        Map<String, String> summary = new LinkedHashMap<>();
+        String camera = ((make != null ? make + " " : "") + (model != null ? model : "")).trim();
+        if (!camera.isEmpty()) {
+            summary.put("Camera", camera);
+        }
+        if (lensModel != null) {
+            summary.put("Lens", lensModel);
+        }
+        LocalDateTime captured = getCaptureTime();
+        if (captured != null) {
+            summary.put("Taken", captured.toString().replace('T', ' '));
+        }
+        if (!Double.isNaN(exposureTime)) {
+            summary.put("Exposure", exposureTime < 1 && exposureTime > 0
+                    ? "1/" + Math.round(1 / exposureTime) + " s"
+                    : String.format("%.1f s", exposureTime));
+        }
+        if (!Double.isNaN(fNumber)) {
+            summary.put("Aperture", String.format("f/%.1f", fNumber));
+        }
+        if (!Double.isNaN(focalLength)) {
+            summary.put("Focal length", String.format("%.0f mm", focalLength));
+        }
+        if (iso > 0) {
+            summary.put("ISO", String.valueOf(iso));
+        }
+        if (software != null) {
+            summary.put("Software", software);
+        }
+        summary.put("Orientation", String.valueOf(getOrientation()));
+        for (Map.Entry<String, String> property : xmp.entrySet()) {
+            summary.put(property.getKey(), property.getValue());
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,266 @@
+package com.photoviewer.image;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads EXIF and XMP metadata from JPEG files by walking the marker segments
+ * at the start of the file and parsing only the APP1 segments. Image data is
+ * never read: scanning stops at the first start-of-scan marker.
+ */
+public class ExifReader {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+    private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+    // XMP properties written as attributes, simple elements, or the first
+    // item of an rdf:Alt/Seq/Bag list
+    private static final Pattern XMP_ATTRIBUTE = Pattern.compile("\\b(\\w+:\\w+)=\"([^\"]*)\"");
+    private static final Pattern XMP_ELEMENT = Pattern.compile("<(\\w+:\\w+)>([^<]+)</\\1>");
+    private static final Pattern XMP_LIST = Pattern.compile(
+            "<(\\w+:\\w+)>\\s*<rdf:(?:Alt|Seq|Bag)>\\s*<rdf:li[^>]*>([^<]*)</rdf:li>");
+
+    // TIFF tags
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_SOFTWARE = 0x0131;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXPOSURE_TIME = 0x829A;
+    private static final int TAG_F_NUMBER = 0x829D;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_ISO = 0x8827;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_FOCAL_LENGTH = 0x920A;
+    private static final int TAG_LENS_MODEL = 0xA434;
+
+    /**
+     * Read the EXIF and XMP data of a file. Returns empty metadata
+     * (orientation 1) for files that are not JPEGs or have no metadata.
+     */
+    public static ExifData read(File file) throws IOException {
+        ExifData data = new ExifData();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192))) {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != MARKER_SOI) {
+                return data;
+            }
+            while (true) {
+                int marker = nextMarker(in);
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    break;
+                }
+                if (marker >= 0xD0 && marker <= 0xD7 || marker == 0x01) {
+                    // Markers without a length field
+                    continue;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    break;
+                }
+                if (marker == MARKER_APP1 && length > EXIF_HEADER.length) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    if (startsWith(segment, EXIF_HEADER)) {
+                        parseTiff(segment, EXIF_HEADER.length, data);
+                    } else if (startsWith(segment, XMP_HEADER)) {
+                        parseXmp(new String(segment, XMP_HEADER.length, segment.length - XMP_HEADER.length,
+                                StandardCharsets.UTF_8), data);
+                    }
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        } catch (EOFException e) {
+            // Truncated file; keep whatever was found
+        }
+        return data;
+    }
+
+    private static int nextMarker(DataInputStream in) throws IOException {
+        int b = in.readUnsignedByte();
+        while (b != 0xFF) {
+            b = in.readUnsignedByte();
+        }
+        // Any number of 0xFF fill bytes may precede the marker code
+        while (b == 0xFF) {
+            b = in.readUnsignedByte();
+        }
+        return b;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the TIFF structure inside the EXIF segment.
+     */
+    private static void parseTiff(byte[] segment, int start, ExifData data) {
+        ByteBuffer tiff = ByteBuffer.wrap(segment, start, segment.length - start).slice();
+        if (tiff.remaining() < 8) {
+            return;
+        }
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return;
+        }
+        if ((tiff.getShort(2) & 0xFFFF) != 42) {
+            return;
+        }
+        try {
+            int exifIfd = parseIfd(tiff, tiff.getInt(4), data);
+            if (exifIfd > 0) {
+                parseIfd(tiff, exifIfd, data);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Offsets pointing outside the segment; keep what was parsed
+        }
+    }
+
+    /**
+     * Read the entries of one IFD.
+     *
+     * @return The offset of the EXIF sub-IFD if this IFD points to one, else 0
+     */
+    private static int parseIfd(ByteBuffer tiff, int offset, ExifData data) {
+        int exifIfd = 0;
+        int count = tiff.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            int type = tiff.getShort(entry + 2) & 0xFFFF;
+            int n = tiff.getInt(entry + 4);
+            switch (tag) {
+                case TAG_ORIENTATION:
+                    data.orientation = readInt(tiff, entry, type);
+                    break;
+                case TAG_EXIF_IFD:
+                    exifIfd = readInt(tiff, entry, type);
+                    break;
+                case TAG_MAKE:
+                    data.make = readAscii(tiff, entry, n);
+                    break;
+                case TAG_MODEL:
+                    data.model = readAscii(tiff, entry, n);
+                    break;
+                case TAG_DATE_TIME:
+                    data.dateTime = readAscii(tiff, entry, n);
+                    break;
+                case TAG_DATE_TIME_ORIGINAL:
+                    data.dateTimeOriginal = readAscii(tiff, entry, n);
+                    break;
+                case TAG_SOFTWARE:
+                    data.software = readAscii(tiff, entry, n);
+                    break;
+                case TAG_LENS_MODEL:
+                    data.lensModel = readAscii(tiff, entry, n);
+                    break;
+                case TAG_EXPOSURE_TIME:
+                    data.exposureTime = readRational(tiff, entry);
+                    break;
+                case TAG_F_NUMBER:
+                    data.fNumber = readRational(tiff, entry);
+                    break;
+                case TAG_FOCAL_LENGTH:
+                    data.focalLength = readRational(tiff, entry);
+                    break;
+                case TAG_ISO:
+                    data.iso = readInt(tiff, entry, type);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return exifIfd;
+    }
+
+    private static int readInt(ByteBuffer tiff, int entry, int type) {
+        // SHORT values are stored in the first two bytes of the value field
+        return type == 3 ? tiff.getShort(entry + 8) & 0xFFFF : tiff.getInt(entry + 8);
+    }
+
+    /**
+     * Read an unsigned RATIONAL value, or NaN if the denominator is zero or
+     * the value lies outside the segment.
+     */
+    private static double readRational(ByteBuffer tiff, int entry) {
+        int offset = tiff.getInt(entry + 8);
+        if (offset < 0 || offset > tiff.limit() - 8) {
+            return Double.NaN;
+        }
+        long numerator = tiff.getInt(offset) & 0xFFFFFFFFL;
+        long denominator = tiff.getInt(offset + 4) & 0xFFFFFFFFL;
+        return denominator == 0 ? Double.NaN : (double) numerator / denominator;
+    }
+
+    /**
+     * Read an ASCII value, or null if its count or offset is corrupt.
+     */
+    private static String readAscii(ByteBuffer tiff, int entry, int count) {
+        int offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        // The count comes from the file, so check it before allocating
+        if (count < 0 || offset < 0 || offset > tiff.limit() - count) {
+            return null;
+        }
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = tiff.get(offset + i);
+        }
+        int end = 0;
+        while (end < count && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, 0, end, StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Collect the simple properties of an XMP packet. Namespace
+     * declarations and RDF structure attributes are skipped.
+     */
+    private static void parseXmp(String xmp, ExifData data) {
+        for (Pattern pattern : new Pattern[] { XMP_ATTRIBUTE, XMP_ELEMENT, XMP_LIST }) {
+            Matcher m = pattern.matcher(xmp);
+            while (m.find()) {
+                String name = m.group(1);
+                if (name.startsWith("xmlns:") || name.startsWith("rdf:") || name.startsWith("x:")) {
+                    continue;
+                }
+                String value = m.group(2).trim();
+                if (!value.isEmpty()) {
+                    data.xmp.putIfAbsent(name, value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.photoviewer.image;
+
+import com.photoviewer.metrics.ImageOperationEvent;
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * Convolution filters (Gaussian blur, unsharp mask, edge detection) that run
+ * in place on packed int images.
+ * <p>
+ * Work is split into horizontal bands processed in parallel on the common
+ * fork-join pool. Horizontal passes only need a scratch copy of the current
+ * row. Vertical passes save the few rows just outside each band before any
+ * band starts writing, and keep the original values of recently overwritten
+ * rows in a small ring buffer, so no full-size temporary image is needed.
+ */
+public class FilterEngine {
+    // Above this sigma a Gaussian is approximated by three box blurs, whose
+    // cost does not depend on the radius
+    private static final double MAX_KERNEL_SIGMA = 4.0;
+    private static final int MIN_BAND_HEIGHT = 32;
+
+    private static final PixelKernels KERNELS = PixelKernels.get();
+
+    /**
+     * Gaussian blur with the given standard deviation in pixels.
+     */
+    public static ImageFilter gaussianBlur(double sigma) {
+        return (target, original) -> blur(PackedRaster.of(target), sigma);
+    }
+
+    /**
+     * Sharpen by adding back the difference between the image and a blurred
+     * copy, ignoring differences smaller than the threshold (0-255) to avoid
+     * amplifying noise.
+     */
+    public static ImageFilter unsharpMask(double sigma, double amount, int threshold) {
+        return (target, original) -> {
+            PackedRaster image = PackedRaster.of(target);
+            PackedRaster source = PackedRaster.of(original);
+            if (source == null) {
+                source = PackedRaster.of(ImageOperationEvent.time("toArgb", original,
+                        () -> ImageOperations.toArgb(original)));
+            }
+            blur(image, sigma);
+            sharpen(image, source, amount, threshold);
+        };
+    }
+
+    /**
+     * Replace the image with the Sobel gradient magnitude of its luminance.
+     */
+    public static ImageFilter edgeDetect() {
+        return (target, original) -> sobel(PackedRaster.of(target));
+    }
+
+    private static void blur(PackedRaster image, double sigma) {
+        if (sigma <= 0) {
+            return;
+        }
+        if (image.hasAlpha) {
+            // Blur premultiplied colours so transparent pixels do not bleed
+            forEachRow(image, y -> KERNELS.premultiply(image.data, image.rowOffset(y), image.width));
+        }
+
+        if (sigma <= MAX_KERNEL_SIGMA) {
+            float[] kernel = gaussianKernel(sigma);
+            forEachRow(image, new int[image.width], (y, scratch) -> {
+                System.arraycopy(image.data, image.rowOffset(y), scratch, 0, image.width);
+                KERNELS.convolveHorizontal(scratch, 0, image.data, image.rowOffset(y), image.width, kernel);
+            });
+            verticalPass(image, kernel.length / 2, (band, y) -> band.convolve(y, kernel));
+        } else {
+            for (int size : boxSizes(sigma, 3)) {
+                int radius = (size - 1) / 2;
+                forEachRow(image, new int[image.width], (y, scratch) -> boxRow(image, y, radius, scratch));
+                verticalPass(image, radius, (band, y) -> band.box(y));
+            }
+        }
+
+        if (image.hasAlpha) {
+            forEachRow(image, y -> KERNELS.unpremultiply(image.data, image.rowOffset(y), image.width));
+        }
+    }
+
+    private static void sharpen(PackedRaster image, PackedRaster original, double amount, int threshold) {
+        forEachRow(image, y -> {
+            int row = image.rowOffset(y);
+            int orig = original.rowOffset(y);
+            for (int x = 0; x < image.width; x++) {
+                int o = original.data[orig + x];
+                int b = image.data[row + x];
+                int result = o & 0xFF000000;
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int oc = (o >> shift) & 0xFF;
+                    int diff = oc - ((b >> shift) & 0xFF);
+                    int c = Math.abs(diff) < threshold ? oc : (int) Math.round(oc + amount * diff);
+                    result |= Math.max(0, Math.min(255, c)) << shift;
+                }
+                image.data[row + x] = result;
+            }
+        });
+    }
+
+    private static void sobel(PackedRaster image) {
+        verticalPass(image, 1, (band, y) -> {
+            int[] above = band.original(y - 1);
+            int aboveOff = band.offset;
+            int[] current = band.original(y);
+            int currentOff = band.offset;
+            int[] below = band.original(y + 1);
+            int belowOff = band.offset;
+
+            int row = image.rowOffset(y);
+            int last = image.width - 1;
+            for (int x = 0; x <= last; x++) {
+                int l = Math.max(0, x - 1);
+                int r = Math.min(last, x + 1);
+                int gx = luma(above[aboveOff + r]) + 2 * luma(current[currentOff + r]) + luma(below[belowOff + r])
+                        - luma(above[aboveOff + l]) - 2 * luma(current[currentOff + l]) - luma(below[belowOff + l]);
+                int gy = luma(below[belowOff + l]) + 2 * luma(below[belowOff + x]) + luma(below[belowOff + r])
+                        - luma(above[aboveOff + l]) - 2 * luma(above[aboveOff + x]) - luma(above[aboveOff + r]);
+                int m = Math.min(255, (int) Math.sqrt(gx * gx + gy * gy));
+                image.data[row + x] = (current[currentOff + x] & 0xFF000000) | (m << 16) | (m << 8) | m;
+            }
+        });
+    }
+
+    private static int luma(int argb) {
+        // Rec. 601 weights in fixed point
+        return (((argb >> 16) & 0xFF) * 77 + ((argb >> 8) & 0xFF) * 150 + (argb & 0xFF) * 29) >> 8;
+    }
+
+    /**
+     * Horizontal box blur of one row using a running sum.
+     */
+    private static void boxRow(PackedRaster image, int y, int radius, int[] scratch) {
+        int width = image.width;
+        int row = image.rowOffset(y);
+        System.arraycopy(image.data, row, scratch, 0, width);
+
+        int size = 2 * radius + 1;
+        int a = 0, r = 0, g = 0, b = 0;
+        for (int k = -radius; k <= radius; k++) {
+            int p = scratch[Math.max(0, Math.min(width - 1, k))];
+            a += p >>> 24;
+            r += (p >> 16) & 0xFF;
+            g += (p >> 8) & 0xFF;
+            b += p & 0xFF;
+        }
+        for (int x = 0; x < width; x++) {
+            image.data[row + x] = ((a + size / 2) / size << 24) | ((r + size / 2) / size << 16)
+                    | ((g + size / 2) / size << 8) | (b + size / 2) / size;
+            int out = scratch[Math.max(0, x - radius)];
+            int in = scratch[Math.min(width - 1, x + radius + 1)];
+            a += (in >>> 24) - (out >>> 24);
+            r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+            g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+            b += (in & 0xFF) - ((out & 0xFF));
+        }
+    }
+
+    /**
+     * Normalized 1D Gaussian kernel covering three standard deviations.
+     */
+    private static float[] gaussianKernel(double sigma) {
+        int radius = Math.max(1, (int) Math.ceil(sigma * 3));
+        float[] kernel = new float[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double w = Math.exp(-(i * i) / (2 * sigma * sigma));
+            kernel[i + radius] = (float) w;
+            sum += w;
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    /**
+     * Odd box widths whose repeated application approximates a Gaussian
+     * (W. Jarosz / P. Kovesi).
+     */
+    private static int[] boxSizes(double sigma, int passes) {
+        double ideal = Math.sqrt(12 * sigma * sigma / passes + 1);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        double mIdeal = (12 * sigma * sigma - passes * lower * lower - 4 * passes * lower - 3 * passes)
+                / (-4 * lower - 4);
+        long m = Math.round(mIdeal);
+
+        int[] sizes = new int[passes];
+        for (int i = 0; i < passes; i++) {
+            sizes[i] = i < m ? lower : upper;
+        }
+        return sizes;
+    }
+
+    // -- Parallel band processing --
+
+    private interface RowTask {
+        void run(int y);
+    }
+
+    private interface ScratchRowTask {
+        void run(int y, int[] scratch);
+    }
+
+    private interface BandRowTask {
+        void run(Band band, int y);
+    }
+
+    private static int bandCount(int height) {
+        return bandCount(height, 0);
+    }
+
+    /**
+     * Number of bands to split the rows into. Bands are kept several times
+     * taller than the radius so the saved edge rows stay a small fraction of
+     * the image.
+     */
+    private static int bandCount(int height, int radius) {
+        int bands = Runtime.getRuntime().availableProcessors() * 4;
+        int minHeight = Math.max(MIN_BAND_HEIGHT, 4 * radius);
+        return Math.max(1, Math.min(bands, height / minHeight));
+    }
+
+    private static int bandStart(int band, int bands, int height) {
+        return (int) ((long) band * height / bands);
+    }
+
+    private static void forEachRow(PackedRaster image, RowTask task) {
+        int bands = bandCount(image.height);
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int end = bandStart(band + 1, bands, image.height);
+            for (int y = bandStart(band, bands, image.height); y < end; y++) {
+                task.run(y);
+            }
+        });
+    }
+
+    /**
+     * Run a row task in parallel, giving each band its own scratch row of the
+     * same size as the template.
+     */
+    private static void forEachRow(PackedRaster image, int[] template, ScratchRowTask task) {
+        int bands = bandCount(image.height);
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int[] scratch = new int[template.length];
+            int end = bandStart(band + 1, bands, image.height);
+            for (int y = bandStart(band, bands, image.height); y < end; y++) {
+                task.run(y, scratch);
+            }
+        });
+    }
+
+    /**
+     * Run a vertical pass in place. Each output row may read original rows up
+     * to {@code radius} above and {@code radius + 1} below it.
+     */
+    private static void verticalPass(PackedRaster image, int radius, BandRowTask task) {
+        int bands = bandCount(image.height, radius);
+        Band[] state = new Band[bands];
+        // Save rows around band edges before any band starts overwriting
+        for (int i = 0; i < bands; i++) {
+            state[i] = new Band(image, bandStart(i, bands, image.height),
+                    bandStart(i + 1, bands, image.height), radius);
+        }
+        IntStream.range(0, bands).parallel().forEach(i -> {
+            Band band = state[i];
+            for (int y = band.start; y < band.end; y++) {
+                band.saveToRing(y);
+                task.run(band, y);
+            }
+        });
+    }
+
+    /**
+     * Per-band view of the original (unfiltered) rows during a vertical pass.
+     */
+    private static class Band {
+        final PackedRaster image;
+        final int start;
+        final int end;
+        final int radius;
+        final int[][] top;
+        final int[][] bottom;
+        final int[][] ring;
+        final int[][] taps;
+        final int[] tapOffsets;
+        // Column sums per channel for box blurs
+        int[] sums;
+        // Last row copied into the ring; rows up to here may be overwritten
+        int saved;
+        // Offset of the row returned by the last original() call
+        int offset;
+
+        Band(PackedRaster image, int start, int end, int radius) {
+            this.image = image;
+            this.start = start;
+            this.end = end;
+            this.radius = radius;
+            this.top = new int[radius][];
+            this.bottom = new int[radius + 1][];
+            this.ring = new int[radius + 1][image.width];
+            this.taps = new int[2 * radius + 1][];
+            this.tapOffsets = new int[2 * radius + 1];
+            this.saved = start - 1;
+
+            for (int i = 0; i < radius; i++) {
+                int y = start - radius + i;
+                if (y >= 0) {
+                    top[i] = copyRow(y);
+                }
+            }
+            for (int i = 0; i <= radius; i++) {
+                int y = end + i;
+                if (y < image.height) {
+                    bottom[i] = copyRow(y);
+                }
+            }
+        }
+
+        private int[] copyRow(int y) {
+            int[] row = new int[image.width];
+            System.arraycopy(image.data, image.rowOffset(y), row, 0, image.width);
+            return row;
+        }
+
+        void saveToRing(int y) {
+            System.arraycopy(image.data, image.rowOffset(y), ring[y % ring.length], 0, image.width);
+            saved = y;
+        }
+
+        /**
+         * Get the original contents of a row (clamped to the image); the row
+         * starts at {@link #offset} in the returned array.
+         */
+        int[] original(int y) {
+            y = Math.max(0, Math.min(image.height - 1, y));
+            if (y < start) {
+                offset = 0;
+                return top[y - (start - radius)];
+            }
+            if (y >= end) {
+                offset = 0;
+                return bottom[y - end];
+            }
+            if (y <= saved) {
+                offset = 0;
+                return ring[y % ring.length];
+            }
+            offset = image.rowOffset(y);
+            return image.data;
+        }
+
+        void convolve(int y, float[] kernel) {
+            for (int k = 0; k < taps.length; k++) {
+                taps[k] = original(y + k - radius);
+                tapOffsets[k] = offset;
+            }
+            KERNELS.convolveVertical(taps, tapOffsets, image.data, image.rowOffset(y), image.width, kernel);
+        }
+
+        /**
+         * One output row of a vertical box blur, sliding the column sums down
+         * by one row afterwards.
+         */
+        void box(int y) {
+            int width = image.width;
+            if (sums == null) {
+                sums = new int[4 * width];
+                for (int k = -radius; k <= radius; k++) {
+                    accumulate(original(start + k), offset, 1);
+                }
+            }
+            int size = 2 * radius + 1;
+            int row = image.rowOffset(y);
+            for (int x = 0, s = 0; x < width; x++, s += 4) {
+                image.data[row + x] = ((sums[s] + size / 2) / size << 24) | ((sums[s + 1] + size / 2) / size << 16)
+                        | ((sums[s + 2] + size / 2) / size << 8) | (sums[s + 3] + size / 2) / size;
+            }
+            accumulate(original(y - radius), offset, -1);
+            accumulate(original(y + radius + 1), offset, 1);
+        }
+
+        private void accumulate(int[] pixels, int off, int sign) {
+            for (int x = 0, s = 0; x < image.width; x++, s += 4) {
+                int p = pixels[off + x];
+                sums[s] += sign * (p >>> 24);
+                sums[s + 1] += sign * ((p >> 16) & 0xFF);
+                sums[s + 2] += sign * ((p >> 8) & 0xFF);
+                sums[s + 3] += sign * (p & 0xFF);
+            }
+        }
+    }
+}
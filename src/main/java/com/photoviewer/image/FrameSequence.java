@@ -0,0 +1,324 @@
+package com.photoviewer.image;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The frames of an animated GIF or the pages of a multi-page document
+ * (e.g. TIFF), decoded on demand on a background thread.
+ * <p>
+ * Animations are decoded ahead of playback into a small ring of composited
+ * frames, so memory stays bounded however long the animation is; the
+ * decoder waits while the ring is full. Pages are decoded one at a time when
+ * asked for.
+ */
+public class FrameSequence {
+    // Composited frames decoded ahead of playback
+    private static final int RING_SIZE = 4;
+    // Browsers show GIF frames with a delay under 20 ms for 100 ms
+    private static final int MIN_DELAY_MILLIS = 20;
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+    private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final boolean animated;
+    private final BlockingQueue<Frame> frames = new ArrayBlockingQueue<>(RING_SIZE);
+    // Buffers handed back by release(), reused for later frames
+    private final BlockingQueue<BufferedImage> freeBuffers = new ArrayBlockingQueue<>(RING_SIZE + 1);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "frame-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile int frameCount = -1;
+    private volatile boolean closed;
+
+    /**
+     * A composited animation frame and how long it is shown.
+     */
+    public static class Frame {
+        public final BufferedImage image;
+        public final int index;
+        public final int delayMillis;
+
+        Frame(BufferedImage image, int index, int delayMillis) {
+            this.image = image;
+            this.index = index;
+            this.delayMillis = delayMillis;
+        }
+    }
+
+    private FrameSequence(ImageInputStream input, ImageReader reader, boolean animated) {
+        this.input = input;
+        this.reader = reader;
+        this.animated = animated;
+        if (animated) {
+            executor.execute(this::decodeLoop);
+        }
+    }
+
+    /**
+     * Open a file if it holds more than one image, or return null. Only GIF
+     * and TIFF files are looked into, by skipping over their first image;
+     * nothing is decoded. Other formats are taken to hold one image, since
+     * for some (e.g. JPEG) finding a second one means reading the whole file.
+     */
+    public static FrameSequence open(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            return null;
+        }
+        ImageReader reader = readers.next();
+        String format = reader.getFormatName();
+        if (!"gif".equalsIgnoreCase(format) && !"tif".equalsIgnoreCase(format)
+                && !"tiff".equalsIgnoreCase(format)) {
+            reader.dispose();
+            input.close();
+            return null;
+        }
+        reader.setInput(input, false, false);
+        try {
+            reader.getWidth(1);
+        } catch (IndexOutOfBoundsException | IOException e) {
+            reader.dispose();
+            input.close();
+            return null;
+        }
+        boolean animated = "gif".equalsIgnoreCase(format);
+        return new FrameSequence(input, reader, animated);
+    }
+
+    /**
+     * Whether the images are timed animation frames rather than pages.
+     */
+    public boolean isAnimated() {
+        return animated;
+    }
+
+    /**
+     * Get the number of frames or pages, or -1 while it is unknown. For
+     * animations it is known after the first pass.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Take the next animation frame if it has been decoded, or return null.
+     * The frame should be released once its pixels have been copied.
+     */
+    public Frame poll() {
+        return frames.poll();
+    }
+
+    /**
+     * Hand the buffer of a frame back for reuse.
+     */
+    public void release(Frame frame) {
+        freeBuffers.offer(frame.image);
+    }
+
+    /**
+     * Count the pages in the background.
+     */
+    public CompletableFuture<Integer> countPages() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (frameCount < 0) {
+                try {
+                    frameCount = reader.getNumImages(true);
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+            return frameCount;
+        }, executor);
+    }
+
+    /**
+     * Decode one page in the background.
+     */
+    public CompletableFuture<BufferedImage> readPage(int index) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reader.read(index);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Stop decoding and release the file.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (animated) {
+            // Wakes the decoder if it waits for room; it releases the reader
+            executor.shutdownNow();
+        } else {
+            executor.execute(this::dispose);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Decode and composite the animation frames in a loop until closed.
+     */
+    private void decodeLoop() {
+        try {
+            Node screen = metadataNode(reader.getStreamMetadata(), GIF_STREAM_FORMAT, "LogicalScreenDescriptor");
+            int width = screen == null ? 0 : intAttribute(screen, "logicalScreenWidth", 0);
+            int height = screen == null ? 0 : intAttribute(screen, "logicalScreenHeight", 0);
+            if (width <= 0 || height <= 0) {
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            }
+
+            BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage previous = null;
+            while (!closed) {
+                int index = 0;
+                clear(canvas, new Rectangle(width, height));
+                Rectangle disposeArea = null;
+                String disposal = "none";
+                while (!closed && (frameCount < 0 || index < frameCount)) {
+                    BufferedImage image;
+                    IIOMetadata metadata;
+                    try {
+                        image = reader.read(index);
+                        metadata = reader.getImageMetadata(index);
+                    } catch (IndexOutOfBoundsException e) {
+                        frameCount = index;
+                        break;
+                    }
+
+                    // Dispose of the previous frame as it asked
+                    if ("restoreToBackgroundColor".equals(disposal)) {
+                        clear(canvas, disposeArea);
+                    } else if ("restoreToPrevious".equals(disposal) && previous != null) {
+                        Graphics2D g = canvas.createGraphics();
+                        g.setComposite(AlphaComposite.Src);
+                        g.setClip(disposeArea);
+                        g.drawImage(previous, 0, 0, null);
+                        g.dispose();
+                    }
+
+                    Node descriptor = metadataNode(metadata, GIF_IMAGE_FORMAT, "ImageDescriptor");
+                    Node control = metadataNode(metadata, GIF_IMAGE_FORMAT, "GraphicControlExtension");
+                    int x = descriptor == null ? 0 : intAttribute(descriptor, "imageLeftPosition", 0);
+                    int y = descriptor == null ? 0 : intAttribute(descriptor, "imageTopPosition", 0);
+                    disposal = control == null ? "none" : attribute(control, "disposalMethod", "none");
+                    int delay = control == null ? 0 : intAttribute(control, "delayTime", 0) * 10;
+                    disposeArea = new Rectangle(x, y, image.getWidth(), image.getHeight());
+                    if ("restoreToPrevious".equals(disposal)) {
+                        previous = copyInto(canvas, previous);
+                    }
+
+                    Graphics2D g = canvas.createGraphics();
+                    g.drawImage(image, x, y, null);
+                    g.dispose();
+
+                    frames.put(new Frame(copyInto(canvas, freeBuffers.poll()), index,
+                            delay < MIN_DELAY_MILLIS ? DEFAULT_DELAY_MILLIS : delay));
+                    index++;
+                }
+                if (index <= 1) {
+                    // Nothing to loop over
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for room in the ring
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error decoding animation: " + e.getMessage());
+        } finally {
+            // The decoder is the only user of the reader during playback
+            dispose();
+        }
+    }
+
+    private void dispose() {
+        reader.dispose();
+        try {
+            input.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private static void clear(BufferedImage image, Rectangle area) {
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(area);
+        g.dispose();
+    }
+
+    /**
+     * Copy an image into a buffer of the same size, allocating one if the
+     * given buffer is null.
+     */
+    private static BufferedImage copyInto(BufferedImage source, BufferedImage buffer) {
+        if (buffer == null) {
+            buffer = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        }
+        PackedRaster from = PackedRaster.of(source);
+        PackedRaster to = PackedRaster.of(buffer);
+        for (int y = 0; y < from.height; y++) {
+            System.arraycopy(from.data, from.rowOffset(y), to.data, to.rowOffset(y), from.width);
+        }
+        return buffer;
+    }
+
+    private static Node metadataNode(IIOMetadata metadata, String format, String name) {
+        if (metadata == null || !java.util.Arrays.asList(metadata.getMetadataFormatNames()).contains(format)) {
+            return null;
+        }
+        for (Node n = metadata.getAsTree(format).getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (name.equals(n.getNodeName())) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    private static String attribute(Node node, String name, String fallback) {
+        NamedNodeMap attributes = node.getAttributes();
+        Node value = attributes == null ? null : attributes.getNamedItem(name);
+        return value == null ? fallback : value.getNodeValue();
+    }
+
+    private static int intAttribute(Node node, String name, int fallback) {
+        try {
+            return Integer.parseInt(attribute(node, name, String.valueOf(fallback)));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
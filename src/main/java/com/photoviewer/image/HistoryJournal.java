@@ -0,0 +1,286 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Temporary file holding undo snapshots that were moved out of memory.
+ * Pixels are deflated at the fastest level, which is enough to shrink
+ * photos with flat or edited areas without making undo wait on the disk.
+ * <p>
+ * Snapshots are appended and never moved; the file is emptied once none of
+ * them is in use any more, and deleted when the journal is closed.
+ */
+public class HistoryJournal {
+    private static final int CHUNK_SIZE = 65536;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this; the file is created with the first snapshot
+    private Path path;
+    private FileChannel channel;
+    private long end;
+    private int live;
+
+    /**
+     * Location and layout of one stored snapshot.
+     */
+    public static class Entry {
+        final long offset;
+        final long length;
+        final int width;
+        final int height;
+        final int type;
+
+        Entry(long offset, long length, int width, int height, int type) {
+            this.offset = offset;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Store an image on the journal thread.
+     */
+    public CompletableFuture<Entry> writeAsync(BufferedImage image) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return write(image);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Read a stored image back on the journal thread.
+     */
+    public CompletableFuture<BufferedImage> readAsync(Entry entry) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(entry);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Store an image. The image must not be modified meanwhile.
+     */
+    public synchronized Entry write(BufferedImage image) throws IOException {
+        if (image.getType() == BufferedImage.TYPE_CUSTOM || image.getRaster().getParent() != null) {
+            // Only whole standard rasters can be recreated from their data
+            image = ImageOperations.copyImage(image);
+        }
+        if (channel == null) {
+            path = Files.createTempFile("photoviewer-undo", ".journal");
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long offset = end;
+        channel.position(offset);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            OutputStream out = new DeflaterOutputStream(Channels.newOutputStream(channel), deflater, CHUNK_SIZE);
+            writeData(image.getRaster().getDataBuffer(), out);
+            // Finish the stream without closing the channel
+            ((DeflaterOutputStream) out).finish();
+            out.flush();
+        } catch (IOException e) {
+            // Drop the partly written snapshot
+            channel.truncate(offset);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        end = channel.position();
+        live++;
+        return new Entry(offset, end - offset, image.getWidth(), image.getHeight(), image.getType());
+    }
+
+    /**
+     * Read a stored image back. The entry stays valid until it is freed.
+     */
+    public BufferedImage read(Entry entry) throws IOException {
+        FileChannel file;
+        synchronized (this) {
+            file = channel;
+        }
+        if (file == null) {
+            throw new IOException("Undo journal is closed");
+        }
+        BufferedImage image = new BufferedImage(entry.width, entry.height, entry.type);
+        Inflater inflater = new Inflater();
+        try {
+            InputStream in = new InflaterInputStream(new ChannelInputStream(file, entry.offset, entry.length),
+                    inflater, CHUNK_SIZE);
+            readData(in, image.getRaster().getDataBuffer());
+        } finally {
+            inflater.end();
+        }
+        return image;
+    }
+
+    /**
+     * Mark a snapshot as no longer needed. This is queued behind the writes
+     * in progress so that the caller does not wait for them.
+     */
+    public void free(Entry entry) {
+        if (!executor.isShutdown()) {
+            executor.execute(this::release);
+        }
+    }
+
+    private synchronized void release() {
+        if (channel != null && --live == 0) {
+            // Nothing stored is in use, so start over at the beginning
+            try {
+                channel.truncate(0);
+                end = 0;
+            } catch (IOException e) {
+                System.err.println("Error truncating undo journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Delete the journal file.
+     */
+    public synchronized void close() {
+        executor.shutdownNow();
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error deleting undo journal: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static void writeData(DataBuffer buffer, OutputStream out) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+            if (buffer instanceof DataBufferByte) {
+                out.write(((DataBufferByte) buffer).getData(bank));
+            } else if (buffer instanceof DataBufferInt) {
+                int[] data = ((DataBufferInt) buffer).getData(bank);
+                for (int i = 0; i < data.length; i += CHUNK_SIZE / 4) {
+                    int n = Math.min(CHUNK_SIZE / 4, data.length - i);
+                    chunk.clear();
+                    chunk.asIntBuffer().put(data, i, n);
+                    out.write(chunk.array(), 0, n * 4);
+                }
+            } else if (buffer instanceof DataBufferUShort) {
+                short[] data = ((DataBufferUShort) buffer).getData(bank);
+                for (int i = 0; i < data.length; i += CHUNK_SIZE / 2) {
+                    int n = Math.min(CHUNK_SIZE / 2, data.length - i);
+                    chunk.clear();
+                    chunk.asShortBuffer().put(data, i, n);
+                    out.write(chunk.array(), 0, n * 2);
+                }
+            } else {
+                throw new IOException("Unsupported image data type " + buffer.getDataType());
+            }
+        }
+    }
+
+    private static void readData(InputStream in, DataBuffer buffer) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+            if (buffer instanceof DataBufferByte) {
+                readFully(in, ((DataBufferByte) buffer).getData(bank), 0, buffer.getSize());
+            } else if (buffer instanceof DataBufferInt) {
+                int[] data = ((DataBufferInt) buffer).getData(bank);
+                for (int i = 0; i < data.length; i += CHUNK_SIZE / 4) {
+                    int n = Math.min(CHUNK_SIZE / 4, data.length - i);
+                    readFully(in, chunk, 0, n * 4);
+                    ByteBuffer.wrap(chunk, 0, n * 4).asIntBuffer().get(data, i, n);
+                }
+            } else if (buffer instanceof DataBufferUShort) {
+                short[] data = ((DataBufferUShort) buffer).getData(bank);
+                for (int i = 0; i < data.length; i += CHUNK_SIZE / 2) {
+                    int n = Math.min(CHUNK_SIZE / 2, data.length - i);
+                    readFully(in, chunk, 0, n * 2);
+                    ByteBuffer.wrap(chunk, 0, n * 2).asShortBuffer().get(data, i, n);
+                }
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("Undo journal entry is truncated");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * One stored snapshot, read with positional reads so that it does not
+     * disturb a write in progress.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n < 0) {
+                throw new EOFException("Undo journal entry is truncated");
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+    }
+}
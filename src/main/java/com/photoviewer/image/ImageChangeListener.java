@@ -0,0 +1,18 @@
+package com.photoviewer.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Notified by {@link ImageManager} whenever the current image is replaced or
+ * modified.
+ */
+public interface ImageChangeListener {
+    /**
+     * @param image The current image after the change, or null if there is
+     *              none
+     * @param dirty The modified area in image coordinates, or null if the
+     *              whole image (or a different image) must be assumed changed
+     */
+    void imageChanged(BufferedImage image, Rectangle dirty);
+}
@@ -0,0 +1,34 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decodes image files of one format. Implementations are picked by
+ * {@link DecoderRegistry} from the first bytes of a file; additional
+ * decoders can be provided as services through
+ * {@code META-INF/services/com.photoviewer.image.ImageDecoder}.
+ */
+public interface ImageDecoder {
+    /**
+     * Short name used in timing reports.
+     */
+    String getName();
+
+    /**
+     * Whether the decoder handles files starting with these bytes. The
+     * header holds up to {@link DecoderRegistry#HEADER_SIZE} bytes.
+     */
+    boolean accepts(byte[] header);
+
+    /**
+     * Decode the first image of a file.
+     *
+     * @param targetSize If greater than 0, the image may be reduced so that
+     *                   its smaller side is at least this size
+     * @return The image, or null if this variant of the format is not
+     *         supported and the next decoder should be tried
+     */
+    BufferedImage decode(File file, int targetSize) throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A pixel filter applied in place by {@link ImageManager#applyFilter}.
+ */
+@FunctionalInterface
+public interface ImageFilter {
+    /**
+     * Apply the filter.
+     *
+     * @param target   The image to modify in place; always a packed
+     *                 TYPE_INT_RGB or TYPE_INT_ARGB image
+     * @param original Unmodified copy of the image before filtering, for
+     *                 filters that need to combine old and new pixels
+     */
+    void apply(BufferedImage target, BufferedImage original);
+}
@@ -0,0 +1,52 @@
+package com.photoviewer.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes any format ImageIO has a reader for, including readers added as
+ * ImageIO plugins. Reduced decodes use source subsampling, so skipped pixels
+ * are never stored.
+ */
+public class ImageIODecoder implements ImageDecoder {
+    @Override
+    public String getName() {
+        return "ImageIO";
+    }
+
+    @Override
+    public boolean accepts(byte[] header) {
+        return true;
+    }
+
+    @Override
+    public BufferedImage decode(File file, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (targetSize > 0) {
+                    int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / targetSize);
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -1,36 +1,119 @@
 package com.photoviewer.image;
 
+import com.photoviewer.metrics.ImageEncodeEvent;
+import com.photoviewer.metrics.ImageOperationEvent;
+import com.photoviewer.metrics.Metrics;
+import com.photoviewer.metrics.UndoSnapshotEvent;
+import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 /**
  * Manages the current image state, file operations, and undo/redo
  * functionality.
  */
 public class ImageManager {
+    // Undo steps kept in memory next to the current state; older ones are
+    // moved to the journal
+    private static final int UNDO_IN_MEMORY = 2;
+
     private BufferedImage currentImage;
     private Image currentImageFX;
     private File currentFile;
-    private Stack<BufferedImage> undoStack;
-    private Stack<BufferedImage> redoStack;
+    private Stack<HistoryState> undoStack;
+    private Stack<HistoryState> redoStack;
     private List<File> directoryFiles = new ArrayList<>();
     private int currentIndex = -1;
+    private long imageVersion = 0;
+    private long preparingVersion = -1;
+    private final List<ImageChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private ToLongFunction<File> fileOrder = file -> 0;
+    private Predicate<File> fileFilter = file -> true;
+    private ExifData metadata = new ExifData();
+    private int orientation = Orientation.NORMAL;
+    // Whether the pixels differ from those stored in currentFile; while they
+    // do not, JPEG saves only rewrite the EXIF orientation
+    private boolean pixelsModified;
+    // Frames or pages of the current file if it holds more than one image
+    private FrameSequence frames;
+    private int pageIndex;
+    private final HistoryJournal journal = new HistoryJournal();
+    private SessionAutosave autosave;
+    // Image version that matches currentFile
+    private long savedVersion;
+
+    /**
+     * An undo or redo step: the pixels together with the orientation they
+     * are displayed with. Older steps keep their pixels only in the journal.
+     */
+    private static class HistoryState {
+        // Null while the pixels are only in the journal
+        BufferedImage image;
+        final int orientation;
+        boolean pixelsModified;
+        HistoryJournal.Entry spilled;
+        boolean spilling;
+        CompletableFuture<BufferedImage> prefetch;
+
+        HistoryState(BufferedImage image, int orientation, boolean pixelsModified) {
+            this.image = image;
+            this.orientation = orientation;
+            this.pixelsModified = pixelsModified;
+        }
+    }
 
     public ImageManager() {
         this.undoStack = new Stack<>();
         this.redoStack = new Stack<>();
+
+        MemoryGovernor governor = MemoryGovernor.get();
+        governor.register("Current image", MemoryGovernor.Priority.VISIBLE, new MemoryGovernor.Pool() {
+            @Override
+            public long getBytes() {
+                return MemoryGovernor.bytesOf(currentImage) + MemoryGovernor.bytesOf(currentImageFX);
+            }
+
+            @Override
+            public long trim(long bytes) {
+                return 0;
+            }
+        });
+        governor.register("Undo history", MemoryGovernor.Priority.HISTORY, new MemoryGovernor.Pool() {
+            @Override
+            public long getBytes() {
+                long total = 0;
+                for (HistoryState state : undoStack) {
+                    total += MemoryGovernor.bytesOf(state.image);
+                }
+                for (HistoryState state : redoStack) {
+                    total += MemoryGovernor.bytesOf(state.image);
+                }
+                return total;
+            }
+
+            @Override
+            public long trim(long bytes) {
+                return trimHistory(bytes);
+            }
+        });
     }
 
     /**
@@ -45,22 +128,27 @@ public class ImageManager {
      */
     public boolean loadImage(File file, boolean clearHistory) {
         try {
-            BufferedImage image = ImageIO.read(file);
+            BufferedImage image = DecoderRegistry.get().decode(file);
             if (image != null) {
+                // Read everything from the file before changing any state
+                ExifData fileMetadata = readMetadata(file);
                 if (clearHistory) {
-                    undoStack.clear();
-                    redoStack.clear();
+                    clearHistory(undoStack);
+                    clearHistory(redoStack);
                 } else {
                     saveToUndoStack();
                 }
                 this.currentImage = image;
-                this.currentImageFX = null; // Clear cache
+                this.metadata = fileMetadata;
+                this.orientation = metadata.getOrientation();
+                this.pixelsModified = false;
+                openFrames(file);
+                invalidateCache();
                 this.currentFile = file;
-                this.redoStack.clear();
+                clearHistory(redoStack);
                 updateDirectoryFiles(file);
-                if (clearHistory) {
-                    System.gc(); // Clean up previous images
-                }
+                markSaved(file, true);
+                MemoryGovernor.get().ensureRoom(0);
                 return true;
             }
         } catch (IOException e) {
@@ -73,7 +161,8 @@ public class ImageManager {
      * Save the current image to its original file.
      */
     public boolean saveImage() {
-        if (currentFile != null && currentImage != null) {
+        // Writing one image back would drop the other pages or frames of the file
+        if (currentFile != null && currentImage != null && frames == null) {
             return saveImageToFile(currentFile);
         }
         return saveImageAs();
@@ -98,6 +187,8 @@ public class ImageManager {
         if (file != null) {
             if (saveImageToFile(file)) {
                 this.currentFile = file;
+                // The new file holds only the image shown
+                closeFrames();
                 return true;
             }
         }
@@ -105,13 +196,207 @@ public class ImageManager {
     }
 
     private boolean saveImageToFile(File file) {
+        Metrics.Sample sample = Metrics.get().start("image.save");
+        ImageEncodeEvent event = new ImageEncodeEvent();
+        event.begin();
+        String extension = getFileExtension(file);
+        boolean lossless = false;
         try {
-            String extension = getFileExtension(file);
-            ImageIO.write(currentImage, extension, file);
+            boolean fromJpeg = currentFile != null && JpegRewriter.isJpeg(currentFile) && currentFile.isFile();
+            if (JpegRewriter.isJpeg(file) && fromJpeg && !pixelsModified) {
+                try {
+                    // Lossless: copy the compressed data, change only the orientation tag
+                    if (JpegRewriter.writeOrientation(currentFile, file, orientation)) {
+                        lossless = true;
+                        markSaved(file, true);
+                        return true;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error rewriting JPEG, encoding it again: " + e.getMessage());
+                }
+            }
+
+            // Other formats get no EXIF block, so the orientation is baked in
+            BufferedImage oriented = ImageOperationEvent.time("applyOrientation", currentImage,
+                    () -> ImageOperations.applyOrientation(currentImage, orientation));
+            if (JpegRewriter.isJpeg(file)) {
+                JpegRewriter.writeWithMetadata(oriented, fromJpeg ? currentFile : null, file);
+            } else {
+                ImageIO.write(oriented, extension, file);
+            }
+            // The file now holds re-encoded pixels, so later saves cannot copy it
+            pixelsModified = true;
+            for (HistoryState state : undoStack) {
+                state.pixelsModified = true;
+            }
+            for (HistoryState state : redoStack) {
+                state.pixelsModified = true;
+            }
+            // The stored pixels now differ from those in memory
+            markSaved(file, false);
             return true;
         } catch (IOException e) {
             System.err.println("Error saving image: " + e.getMessage());
             return false;
+        } finally {
+            sample.stop();
+            event.complete(file, extension, lossless, currentImage);
+        }
+    }
+
+    /**
+     * Record that the current state matches a file, so it needs no
+     * autosave until it is edited again.
+     *
+     * @param sameAsFile Whether the file holds exactly the pixels and
+     *                   orientation in memory
+     */
+    private void markSaved(File file, boolean sameAsFile) {
+        savedVersion = imageVersion;
+        if (autosave != null) {
+            autosave.reset(file, sameAsFile);
+        }
+    }
+
+    /**
+     * Save unsaved edits to a recovery file in the background from now on.
+     */
+    public void enableAutosave(File recoveryFile) {
+        if (autosave == null) {
+            autosave = new SessionAutosave(this, recoveryFile);
+            addChangeListener(autosave);
+            autosave.reset(currentFile, !hasUnsavedChanges() && !pixelsModified);
+        }
+    }
+
+    /**
+     * Check whether the current image was changed since it was loaded or
+     * saved.
+     */
+    public boolean hasUnsavedChanges() {
+        return currentImage != null && imageVersion != savedVersion;
+    }
+
+    /**
+     * Continue an edit session read back from a recovery file. The
+     * recovered image counts as unsaved.
+     */
+    public void recover(SessionAutosave.Recovery recovery) {
+        clearHistory(undoStack);
+        clearHistory(redoStack);
+        if (frames != null) {
+            frames.close();
+            frames = null;
+        }
+        pageIndex = 0;
+        currentImage = recovery.image;
+        orientation = recovery.orientation;
+        pixelsModified = true;
+        File source = recovery.source;
+        metadata = source != null && source.isFile() ? readMetadata(source) : new ExifData();
+        currentFile = source;
+        invalidateCache();
+        if (source != null) {
+            updateDirectoryFiles(source);
+        }
+        markSaved(source, false);
+        // Nothing of it is saved yet
+        savedVersion = -1;
+    }
+
+    private void openFrames(File file) {
+        closeFrames();
+        try {
+            frames = FrameSequence.open(file);
+        } catch (IOException e) {
+            System.err.println("Error reading frames: " + e.getMessage());
+            frames = null;
+        }
+        if (frames != null && !frames.isAnimated()) {
+            frames.countPages().exceptionally(error -> {
+                System.err.println("Error counting pages: " + error.getMessage());
+                return -1;
+            });
+        }
+    }
+
+    private void closeFrames() {
+        if (frames != null) {
+            frames.close();
+            frames = null;
+        }
+        pageIndex = 0;
+    }
+
+    /**
+     * Check whether the current file has a page with the given index other
+     * than the one shown. Pages past the end are only known once counted.
+     */
+    public boolean hasPage(int index) {
+        FrameSequence pages = frames;
+        return pages != null && !pages.isAnimated() && index >= 0 && index != pageIndex
+                && (pages.getFrameCount() < 0 || index < pages.getFrameCount());
+    }
+
+    /**
+     * Show another page of a multi-page file in place of the current one,
+     * discarding the undo history and any edits to the page shown.
+     * The page is decoded in the background and onLoaded runs on the JavaFX
+     * thread once it is shown; pages past the end are ignored.
+     */
+    public void loadPage(int index, Runnable onLoaded) {
+        FrameSequence pages = frames;
+        if (!hasPage(index)) {
+            return;
+        }
+        pages.readPage(index).whenComplete((page, error) -> Platform.runLater(() -> {
+            if (frames != pages) {
+                // Another file was opened meanwhile
+                return;
+            }
+            if (error != null) {
+                if (!(error.getCause() instanceof IndexOutOfBoundsException)) {
+                    System.err.println("Error loading page: " + error.getMessage());
+                }
+                return;
+            }
+            clearHistory(undoStack);
+            clearHistory(redoStack);
+            currentImage = page;
+            pageIndex = index;
+            pixelsModified = true;
+            invalidateCache();
+            markSaved(currentFile, false);
+            onLoaded.run();
+        }));
+    }
+
+    /**
+     * Get the frames or pages of the current file, or null if it holds a
+     * single image.
+     */
+    public FrameSequence getFrameSequence() {
+        return frames;
+    }
+
+    /**
+     * Get the index of the page shown from a multi-page file.
+     */
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    /**
+     * Read the EXIF data of a file; a file whose metadata cannot be read is
+     * shown as stored.
+     */
+    private static ExifData readMetadata(File file) {
+        try {
+            return ExifReader.read(file);
+        } catch (IOException | RuntimeException e) {
+            // Bad metadata must not prevent showing the image
+            System.err.println("Error reading metadata: " + e.getMessage());
+            return new ExifData();
         }
     }
 
@@ -125,14 +410,18 @@ public class ImageManager {
     }
 
     /**
-     * Resize the current image.
+     * Resize the current image to a size as displayed, i.e. after its
+     * orientation. The stored pixels are resized along the matching axes.
      */
     public void resizeImage(int newWidth, int newHeight) {
         if (currentImage != null) {
             saveToUndoStack();
-            currentImage = ImageOperations.resize(currentImage, newWidth, newHeight);
-            currentImageFX = null; // Clear cache
-            redoStack.clear();
+            boolean swapped = Orientation.swapsAxes(orientation);
+            BufferedImage original = currentImage;
+            currentImage = ImageOperationEvent.time("resize", original, () -> ImageOperations.resize(original,
+                    swapped ? newHeight : newWidth, swapped ? newWidth : newHeight));
+            invalidateCache();
+            clearHistory(redoStack);
         }
     }
 
@@ -142,33 +431,76 @@ public class ImageManager {
     public void cropImage(int x, int y, int width, int height) {
         if (currentImage != null) {
             saveToUndoStack();
-            currentImage = ImageOperations.crop(currentImage, x, y, width, height);
-            currentImageFX = null; // Clear cache
-            redoStack.clear();
+            BufferedImage original = currentImage;
+            currentImage = ImageOperationEvent.time("crop", original,
+                    () -> ImageOperations.crop(original, x, y, width, height));
+            invalidateCache();
+            clearHistory(redoStack);
         }
     }
 
     /**
-     * Apply a drawing operation to the image.
+     * Apply a drawing operation to the image. The painted tiles are merged
+     * into the current image in place; empty layers are ignored.
      */
-    public void applyDrawing(BufferedImage drawingLayer) {
+    public void applyDrawing(DrawingLayer drawingLayer) {
+        if (currentImage != null && !drawingLayer.isEmpty()) {
+            saveToUndoStack();
+            BufferedImage base = currentImage;
+            currentImage = ImageOperationEvent.time("mergeLayer", base,
+                    () -> ImageOperations.mergeLayer(base, drawingLayer));
+            invalidateCache(drawingLayer.getPaintedBounds());
+            clearHistory(redoStack);
+        }
+    }
+
+    /**
+     * Apply a pixel filter to the current image. Packed int images are
+     * filtered in place; other types are converted to ARGB first.
+     */
+    public void applyFilter(ImageFilter filter) {
         if (currentImage != null) {
             saveToUndoStack();
-            currentImage = ImageOperations.mergeImages(currentImage, drawingLayer);
-            currentImageFX = null; // Clear cache
-            redoStack.clear();
+            BufferedImage original = undoStack.peek().image;
+            if (PackedRaster.of(currentImage) == null) {
+                BufferedImage source = currentImage;
+                currentImage = ImageOperationEvent.time("toArgb", source, () -> ImageOperations.toArgb(source));
+            }
+            filter.apply(currentImage, original);
+            invalidateCache();
+            clearHistory(redoStack);
+        }
+    }
+
+    /**
+     * Apply a colour lookup table to the current image in place. Image types
+     * the table cannot process directly are converted to ARGB first.
+     */
+    public void adjustColors(ColorLut lut) {
+        if (currentImage != null && !lut.isIdentity()) {
+            saveToUndoStack();
+            if (!lut.apply(currentImage)) {
+                BufferedImage source = currentImage;
+                currentImage = ImageOperationEvent.time("toArgb", source, () -> ImageOperations.toArgb(source));
+                lut.apply(currentImage);
+            }
+            invalidateCache();
+            clearHistory(redoStack);
         }
     }
 
     /**
-     * Rotate the current image 90 degrees to the right.
+     * Rotate the current image 90 degrees to the right. Only the orientation
+     * changes; the pixels stay as stored so that a JPEG can be saved without
+     * encoding it again.
      */
     public void rotateImage90Right() {
         if (currentImage != null) {
-            saveToUndoStack();
-            currentImage = ImageOperations.rotate90Right(currentImage);
-            currentImageFX = null; // Clear cache
-            redoStack.clear();
+            pushHistory();
+            orientation = Orientation.rotateRight(orientation);
+            // No pixel changed
+            invalidateCache(new Rectangle());
+            clearHistory(redoStack);
         }
     }
 
@@ -178,9 +510,25 @@ public class ImageManager {
     public void pasteRegion(BufferedImage region, int x, int y) {
         if (currentImage != null) {
             saveToUndoStack();
-            currentImage = ImageOperations.pasteRegion(currentImage, region, x, y);
-            currentImageFX = null; // Clear cache
-            redoStack.clear();
+            BufferedImage base = currentImage;
+            currentImage = ImageOperationEvent.time("pasteRegion", base,
+                    () -> ImageOperations.pasteRegionInPlace(base, region, x, y));
+            invalidateCache(new Rectangle(x, y, region.getWidth(), region.getHeight()));
+            clearHistory(redoStack);
+        }
+    }
+
+    /**
+     * Copy the pixels of a moved selection to its new position.
+     */
+    public void pasteSelection(Selection selection) {
+        if (currentImage != null && selection.isMoved()
+                && selection.fitsWithin(currentImage.getWidth(), currentImage.getHeight())) {
+            saveToUndoStack();
+            ImageOperationEvent.time("copyWithin", currentImage, () -> ImageOperations.copyWithin(currentImage,
+                    selection.getSourceBounds(), selection.getTargetX(), selection.getTargetY()));
+            invalidateCache(selection.getTargetBounds());
+            clearHistory(redoStack);
         }
     }
 
@@ -189,9 +537,12 @@ public class ImageManager {
      */
     public void undo() {
         if (!undoStack.isEmpty()) {
-            redoStack.push(copyImage(currentImage));
-            currentImage = undoStack.pop();
-            currentImageFX = null; // Clear cache
+            HistoryState previous = undoStack.pop();
+            if (load(previous)) {
+                redoStack.push(currentState());
+                restore(previous);
+            }
+            spillHistory();
         }
     }
 
@@ -200,29 +551,187 @@ public class ImageManager {
      */
     public void redo() {
         if (!redoStack.isEmpty()) {
-            undoStack.push(copyImage(currentImage));
-            currentImage = redoStack.pop();
-            currentImageFX = null; // Clear cache
+            HistoryState next = redoStack.pop();
+            if (load(next)) {
+                undoStack.push(currentState());
+                restore(next);
+            }
+            spillHistory();
+        }
+    }
+
+    private HistoryState currentState() {
+        Metrics.Sample sample = Metrics.get().start("history.snapshot");
+        UndoSnapshotEvent event = new UndoSnapshotEvent();
+        event.begin();
+        try {
+            return new HistoryState(copyImage(currentImage), orientation, pixelsModified);
+        } finally {
+            sample.stop();
+            event.complete(currentImage);
         }
     }
 
+    private void restore(HistoryState state) {
+        currentImage = state.image;
+        orientation = state.orientation;
+        pixelsModified = state.pixelsModified;
+        invalidateCache();
+    }
+
+    /**
+     * Record the current state before an edit of the pixels.
+     */
     private void saveToUndoStack() {
+        pushHistory();
+        pixelsModified = currentImage != null;
+    }
+
+    private void pushHistory() {
         if (currentImage != null) {
-            undoStack.push(copyImage(currentImage));
-            // Limit undo stack size to prevent memory issues
-            if (undoStack.size() > 3) {
-                undoStack.remove(0);
-                System.gc(); // Hint cleanup when removing history
+            MemoryGovernor.get().ensureRoom(MemoryGovernor.bytesOf(currentImage));
+            undoStack.push(currentState());
+            spillHistory();
+        }
+    }
+
+    /**
+     * Bring the pixels of a step about to be restored back into memory,
+     * from the prefetch started for it if there is one. A step that cannot
+     * be read back is dropped.
+     */
+    private boolean load(HistoryState state) {
+        try {
+            if (state.image == null) {
+                state.image = state.prefetch != null ? state.prefetch.join() : journal.read(state.spilled);
             }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading undo history: " + e.getMessage());
         }
+        discard(state);
+        return state.image != null;
+    }
+
+    /**
+     * Move history steps other than the most recent ones to the journal in
+     * the background, and read back the next step to undo or redo if it is
+     * only in the journal, so that it is ready when asked for.
+     */
+    private void spillHistory() {
+        for (int i = 0; i < undoStack.size() - UNDO_IN_MEMORY; i++) {
+            spill(undoStack.get(i));
+        }
+        for (int i = 0; i < redoStack.size() - 1; i++) {
+            spill(redoStack.get(i));
+        }
+        for (Stack<HistoryState> stack : List.of(undoStack, redoStack)) {
+            HistoryState next = stack.isEmpty() ? null : stack.peek();
+            if (next != null && next.image == null && next.prefetch == null) {
+                next.prefetch = journal.readAsync(next.spilled);
+            }
+        }
+    }
+
+    private void spill(HistoryState state) {
+        if (state.image == null || state.spilled != null || state.spilling) {
+            return;
+        }
+        state.spilling = true;
+        journal.writeAsync(state.image).whenComplete((entry, error) -> Platform.runLater(() -> {
+            state.spilling = false;
+            if (error != null) {
+                // Stays in memory, where the memory governor may still drop it
+                System.err.println("Error writing undo history: " + error.getMessage());
+            } else if (!undoStack.contains(state) && !redoStack.contains(state)) {
+                // Restored or discarded while it was written
+                journal.free(entry);
+            } else {
+                state.spilled = entry;
+                state.image = null;
+                state.prefetch = null;
+            }
+        }));
+    }
+
+    /**
+     * Free the journal space of a step that is restored or dropped.
+     */
+    private void discard(HistoryState state) {
+        if (state.spilled != null) {
+            journal.free(state.spilled);
+            state.spilled = null;
+        }
+        state.prefetch = null;
+    }
+
+    private void clearHistory(Stack<HistoryState> stack) {
+        for (HistoryState state : stack) {
+            discard(state);
+        }
+        stack.clear();
+    }
+
+    /**
+     * Release history pixels for the memory governor: copies already in the
+     * journal are dropped right away, and older steps are written to the
+     * journal in the background and dropped once written. The most recent
+     * undo step always stays.
+     */
+    private long trimHistory(long bytes) {
+        List<HistoryState> candidates = new ArrayList<>();
+        candidates.addAll(undoStack.subList(0, Math.max(0, undoStack.size() - 1)));
+        candidates.addAll(redoStack);
+        long released = 0;
+        for (HistoryState state : candidates) {
+            if (released < bytes && state.image != null && state.spilled != null) {
+                released += MemoryGovernor.bytesOf(state.image);
+                state.image = null;
+                state.prefetch = null;
+            }
+        }
+        // Steps being written count as released soon
+        long pending = released;
+        for (HistoryState state : candidates) {
+            if (pending >= bytes) {
+                break;
+            }
+            if (state.image != null) {
+                pending += MemoryGovernor.bytesOf(state.image);
+                spill(state);
+            }
+        }
+        return released;
     }
 
     private BufferedImage copyImage(BufferedImage source) {
         if (source == null)
             return null;
-        BufferedImage copy = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
-        copy.getGraphics().drawImage(source, 0, 0, null);
-        return copy;
+        return ImageOperations.copyImage(source);
+    }
+
+    private void invalidateCache() {
+        invalidateCache(null);
+    }
+
+    /**
+     * Drop derived data after a change and notify listeners.
+     *
+     * @param dirty The modified area, or null if the whole image changed
+     */
+    private void invalidateCache(Rectangle dirty) {
+        currentImageFX = null;
+        imageVersion++;
+        for (ImageChangeListener listener : changeListeners) {
+            listener.imageChanged(currentImage, dirty);
+        }
+    }
+
+    /**
+     * Register a listener that is called after every change to the current
+     * image, on the thread that made the change.
+     */
+    public void addChangeListener(ImageChangeListener listener) {
+        changeListeners.add(listener);
     }
 
     /**
@@ -231,13 +740,57 @@ public class ImageManager {
     public Image getCurrentImageFX() {
         if (currentImage != null) {
             if (currentImageFX == null) {
-                currentImageFX = SwingFXUtils.toFXImage(currentImage, null);
+                currentImageFX = toFXImage(currentImage);
             }
             return currentImageFX;
         }
         return null;
     }
 
+    /**
+     * Check whether the JavaFX version of the current image is already
+     * available without a conversion.
+     */
+    public boolean isImageFXReady() {
+        return currentImage != null && currentImageFX != null;
+    }
+
+    /**
+     * Convert the current image to a JavaFX Image on a background thread so a
+     * later call to getCurrentImageFX() does not block. The callback runs on
+     * the JavaFX thread once the converted image has been cached.
+     */
+    public void prepareImageFX(Runnable onReady) {
+        if (currentImage == null || currentImageFX != null || preparingVersion == imageVersion) {
+            return;
+        }
+        BufferedImage image = currentImage;
+        long version = imageVersion;
+        preparingVersion = version;
+
+        Thread thread = new Thread(() -> {
+            Image fxImage = toFXImage(image);
+            Platform.runLater(() -> {
+                // Discard the result if the image changed in the meantime
+                if (imageVersion == version && currentImageFX == null) {
+                    currentImageFX = fxImage;
+                    onReady.run();
+                }
+            });
+        }, "fx-image-prepare");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Image toFXImage(BufferedImage image) {
+        Metrics.Sample sample = Metrics.get().start("image.toFX");
+        try {
+            return SwingFXUtils.toFXImage(image, null);
+        } finally {
+            sample.stop();
+        }
+    }
+
     /**
      * Get the current BufferedImage.
      */
@@ -251,14 +804,75 @@ public class ImageManager {
     public void setCurrentImage(BufferedImage image) {
         saveToUndoStack();
         this.currentImage = image;
-        this.currentImageFX = null; // Clear cache
-        redoStack.clear();
+        invalidateCache();
+        clearHistory(redoStack);
+    }
+
+    /**
+     * Replace the current image with a new one computed from it, such as the
+     * result of a background adjustment. The current image itself becomes
+     * the undo step rather than a copy of it, so it must not be changed by
+     * the caller afterwards.
+     */
+    public void replaceCurrentImage(BufferedImage image) {
+        if (currentImage != null) {
+            undoStack.push(new HistoryState(currentImage, orientation, pixelsModified));
+            spillHistory();
+        }
+        pixelsModified = true;
+        this.currentImage = image;
+        invalidateCache();
+        clearHistory(redoStack);
+    }
+
+    /**
+     * Get a counter that changes every time the current image is replaced or
+     * modified, so derived caches can detect stale data.
+     */
+    public long getImageVersion() {
+        return imageVersion;
     }
 
     public File getCurrentFile() {
         return currentFile;
     }
 
+    /**
+     * Get the EXIF and XMP metadata of the current file.
+     */
+    public ExifData getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Get the EXIF orientation the current image is displayed with: that of
+     * the file, changed by rotations. The pixels stay as stored in the file.
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Get the current image as displayed, with its orientation applied to
+     * the pixels: for anything that leaves the viewer, such as the clipboard
+     * or an AI request. The current image itself if it is upright.
+     */
+    public BufferedImage getOrientedImage() {
+        BufferedImage image = currentImage;
+        return image == null ? null : ImageOperationEvent.time("applyOrientation", image,
+                () -> ImageOperations.applyOrientation(image, orientation));
+    }
+
+    public int getDisplayWidth() {
+        return currentImage == null ? 0
+                : Orientation.displayWidth(orientation, currentImage.getWidth(), currentImage.getHeight());
+    }
+
+    public int getDisplayHeight() {
+        return currentImage == null ? 0
+                : Orientation.displayHeight(orientation, currentImage.getWidth(), currentImage.getHeight());
+    }
+
     public boolean canUndo() {
         return !undoStack.isEmpty();
     }
@@ -270,19 +884,50 @@ public class ImageManager {
     private void updateDirectoryFiles(File file) {
         File parent = file.getParentFile();
         if (parent != null && parent.isDirectory()) {
-            File[] files = parent.listFiles((dir, name) -> {
-                String lower = name.toLowerCase();
-                return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg")
-                        || lower.endsWith(".gif") || lower.endsWith(".bmp") || lower.endsWith(".webp");
-            });
+            File[] files = parent.listFiles((dir, name) -> isSupportedFile(name));
             if (files != null) {
-                directoryFiles = new ArrayList<>(Arrays.asList(files));
-                Collections.sort(directoryFiles);
+                directoryFiles = new ArrayList<>();
+                for (File f : files) {
+                    // The open file stays navigable even if it is filtered out
+                    if (fileFilter.test(f) || f.equals(file)) {
+                        directoryFiles.add(f);
+                    }
+                }
+                // Keys are read once, so that they cannot change during the sort
+                Map<File, Long> keys = new HashMap<>();
+                for (File f : directoryFiles) {
+                    keys.put(f, fileOrder.applyAsLong(f));
+                }
+                directoryFiles.sort(Comparator.<File>comparingLong(keys::get).thenComparing(Comparator.naturalOrder()));
                 currentIndex = directoryFiles.indexOf(file);
             }
         }
     }
 
+    /**
+     * Set how the files of the current folder are ordered and which are
+     * included when navigating, and re-apply it to the current folder.
+     *
+     * @param order Key to sort files by, with ties ordered by name
+     */
+    public void setDirectoryOrder(ToLongFunction<File> order, Predicate<File> filter) {
+        this.fileOrder = order;
+        this.fileFilter = filter;
+        if (currentFile != null) {
+            updateDirectoryFiles(currentFile);
+        }
+    }
+
+    /**
+     * Check whether a file name has one of the supported image extensions.
+     */
+    public static boolean isSupportedFile(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg")
+                || lower.endsWith(".gif") || lower.endsWith(".bmp") || lower.endsWith(".webp")
+                || lower.endsWith(".tif") || lower.endsWith(".tiff");
+    }
+
     public boolean loadNextImage() {
         if (directoryFiles.size() > 1 && currentIndex < directoryFiles.size() - 1) {
             return loadImage(directoryFiles.get(currentIndex + 1), true);
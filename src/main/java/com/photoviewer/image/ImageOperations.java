@@ -2,11 +2,20 @@ package com.photoviewer.image;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
  * Utility class for image manipulation operations.
+ * Compositing and format conversion of packed int images run through
+ * {@link PixelKernels}; other image types fall back to Java2D.
  */
 public class ImageOperations {
+    private static final PixelKernels KERNELS = PixelKernels.get();
 
     /**
      * Resize an image with high quality.
@@ -40,44 +49,187 @@ public class ImageOperations {
     }
 
     /**
-     * Copy a region from an image.
+     * Paste a region onto an image at the specified location, modifying the
+     * image in place. Only the destination rectangle is written.
      */
-    public static BufferedImage copyRegion(BufferedImage source, int x, int y, int width, int height) {
-        BufferedImage region = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = region.createGraphics();
-        g.drawImage(source, 0, 0, width, height, x, y, x + width, y + height, null);
-        g.dispose();
-        return region;
+    public static BufferedImage pasteRegionInPlace(BufferedImage base, BufferedImage region, int x, int y) {
+        compositeOnto(region, base, x, y);
+        return base;
     }
 
     /**
-     * Paste a region onto an image at the specified location.
+     * Draw one image over another at the given position (source over),
+     * using the pixel kernels when both are packed int images.
      */
-    public static BufferedImage pasteRegion(BufferedImage base, BufferedImage region, int x, int y) {
-        BufferedImage result = copyImage(base);
+    private static void compositeOnto(BufferedImage src, BufferedImage dst, int x, int y) {
+        PackedRaster from = PackedRaster.of(src);
+        PackedRaster to = PackedRaster.of(dst);
+        if (from == null || to == null) {
+            Graphics2D g = dst.createGraphics();
+            g.drawImage(src, x, y, null);
+            g.dispose();
+            return;
+        }
+
+        Rectangle area = new Rectangle(x, y, from.width, from.height)
+                .intersection(new Rectangle(0, 0, to.width, to.height));
+        for (int row = area.y; row < area.y + area.height; row++) {
+            int srcOff = from.rowOffset(row - y) + (area.x - x);
+            int dstOff = to.rowOffset(row) + area.x;
+            if (!from.hasAlpha) {
+                if (to.hasAlpha) {
+                    KERNELS.rgbToArgb(from.data, srcOff, to.data, dstOff, area.width);
+                } else {
+                    System.arraycopy(from.data, srcOff, to.data, dstOff, area.width);
+                }
+            } else if (to.hasAlpha) {
+                KERNELS.compositeSrcOver(from.data, srcOff, to.data, dstOff, area.width);
+            } else {
+                KERNELS.compositeSrcOverOpaque(from.data, srcOff, to.data, dstOff, area.width);
+            }
+        }
+    }
+
+    /**
+     * Copy a rectangle of an image to another position within the same image,
+     * in place. The destination is clipped to the image; overlapping source
+     * and destination areas are handled by copying only the source rectangle.
+     */
+    public static void copyWithin(BufferedImage image, Rectangle source, int destX, int destY) {
+        Rectangle dest = new Rectangle(destX, destY, source.width, source.height)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (dest.isEmpty()) {
+            return;
+        }
+
+        int srcX = source.x + (dest.x - destX);
+        int srcY = source.y + (dest.y - destY);
+        WritableRaster raster = image.getRaster();
+        Raster from = raster.createChild(srcX, srcY, dest.width, dest.height, 0, 0, null);
+        if (dest.intersects(new Rectangle(srcX, srcY, dest.width, dest.height))) {
+            WritableRaster copy = from.createCompatibleWritableRaster();
+            copy.setRect(from);
+            from = copy;
+        }
+        raster.setRect(dest.x, dest.y, from);
+    }
+
+    /**
+     * Convert an image to a new TYPE_INT_ARGB image.
+     */
+    public static BufferedImage toArgb(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        PackedRaster to = PackedRaster.of(result);
+
+        PackedRaster from = PackedRaster.of(source);
+        if (from != null) {
+            for (int y = 0; y < height; y++) {
+                if (from.hasAlpha) {
+                    System.arraycopy(from.data, from.rowOffset(y), to.data, to.rowOffset(y), width);
+                } else {
+                    KERNELS.rgbToArgb(from.data, from.rowOffset(y), to.data, to.rowOffset(y), width);
+                }
+            }
+            return result;
+        }
+
+        Raster raster = source.getRaster();
+        if (source.getType() == BufferedImage.TYPE_3BYTE_BGR
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel) {
+            PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+            if (model.getPixelStride() == 3 && Arrays.equals(model.getBandOffsets(), new int[] { 2, 1, 0 })) {
+                byte[] bytes = ((DataBufferByte) raster.getDataBuffer()).getData();
+                int stride = model.getScanlineStride();
+                int offset = raster.getDataBuffer().getOffset()
+                        - raster.getSampleModelTranslateX() * 3
+                        - raster.getSampleModelTranslateY() * stride;
+                for (int y = 0; y < height; y++) {
+                    KERNELS.bgrToArgb(bytes, offset + y * stride, to.data, to.rowOffset(y), width);
+                }
+                return result;
+            }
+        }
+
         Graphics2D g = result.createGraphics();
-        g.drawImage(region, x, y, null);
+        g.drawImage(source, 0, 0, null);
         g.dispose();
         return result;
     }
 
     /**
-     * Merge two images (overlay drawing layer on base image).
+     * Composite the painted tiles of a drawing layer onto an image.
+     * Only allocated tiles are touched, and the base image keeps its own
+     * pixel type; images that cannot represent arbitrary colours (indexed,
+     * grayscale or custom types) are converted to ARGB first so strokes keep
+     * their colour.
+     *
+     * @return the base image, or its ARGB conversion
      */
-    public static BufferedImage mergeImages(BufferedImage base, BufferedImage overlay) {
-        BufferedImage merged = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = merged.createGraphics();
-        g.drawImage(base, 0, 0, null);
-        g.drawImage(overlay, 0, 0, null);
+    public static BufferedImage mergeLayer(BufferedImage base, DrawingLayer layer) {
+        BufferedImage target = base;
+        if (base.getType() == BufferedImage.TYPE_CUSTOM || base.getColorModel() instanceof IndexColorModel
+                || base.getColorModel().getNumColorComponents() < 3) {
+            target = toArgb(base);
+        }
+
+        PackedRaster to = PackedRaster.of(target);
+        if (to != null) {
+            int size = DrawingLayer.TILE_SIZE;
+            for (int ty = 0; ty < layer.getTilesY(); ty++) {
+                for (int tx = 0; tx < layer.getTilesX(); tx++) {
+                    int[] tile = layer.getTile(tx, ty);
+                    if (tile == null) {
+                        continue;
+                    }
+                    Rectangle bounds = layer.getTileBounds(tx, ty);
+                    for (int row = 0; row < bounds.height; row++) {
+                        int dstOff = to.rowOffset(bounds.y + row) + bounds.x;
+                        if (to.hasAlpha) {
+                            KERNELS.compositeSrcOver(tile, row * size, to.data, dstOff, bounds.width);
+                        } else {
+                            KERNELS.compositeSrcOverOpaque(tile, row * size, to.data, dstOff, bounds.width);
+                        }
+                    }
+                }
+            }
+            return target;
+        }
+
+        Graphics2D g = target.createGraphics();
+        for (int ty = 0; ty < layer.getTilesY(); ty++) {
+            for (int tx = 0; tx < layer.getTilesX(); tx++) {
+                BufferedImage tile = layer.getTileImage(tx, ty);
+                if (tile != null) {
+                    g.drawImage(tile, tx * DrawingLayer.TILE_SIZE, ty * DrawingLayer.TILE_SIZE, null);
+                }
+            }
+        }
         g.dispose();
-        return merged;
+        return target;
     }
 
     /**
      * Create a copy of an image.
      */
     public static BufferedImage copyImage(BufferedImage source) {
+        // Custom types have no constructor equivalent, so copy those as ARGB
+        if (source.getType() == BufferedImage.TYPE_CUSTOM) {
+            return toArgb(source);
+        }
+
         BufferedImage copy = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
+        PackedRaster from = PackedRaster.of(source);
+        PackedRaster to = PackedRaster.of(copy);
+        if (from != null && to != null) {
+            for (int y = 0; y < from.height; y++) {
+                System.arraycopy(from.data, from.rowOffset(y), to.data, to.rowOffset(y), from.width);
+            }
+            return copy;
+        }
+
         Graphics2D g = copy.createGraphics();
         g.drawImage(source, 0, 0, null);
         g.dispose();
@@ -105,6 +257,26 @@ public class ImageOperations {
         return rotated;
     }
 
+    /**
+     * Return an image with an EXIF orientation applied to its pixels, or the
+     * image itself if the orientation is upright.
+     */
+    public static BufferedImage applyOrientation(BufferedImage original, int orientation) {
+        if (orientation == Orientation.NORMAL) {
+            return original;
+        }
+        int width = original.getWidth();
+        int height = original.getHeight();
+        int type = original.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_ARGB : original.getType();
+        BufferedImage oriented = new BufferedImage(Orientation.displayWidth(orientation, width, height),
+                Orientation.displayHeight(orientation, width, height), type);
+        Graphics2D g = oriented.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(original, new java.awt.geom.AffineTransform(Orientation.matrix(orientation, width, height)), null);
+        g.dispose();
+        return oriented;
+    }
+
     /**
      * Create a blank transparent image.
      */
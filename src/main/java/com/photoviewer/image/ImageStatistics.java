@@ -0,0 +1,80 @@
+package com.photoviewer.image;
+
+/**
+ * Histograms and summary values for the red, green, blue and luminance
+ * channels of an image.
+ */
+public final class ImageStatistics {
+    public static final int RED = 0;
+    public static final int GREEN = 1;
+    public static final int BLUE = 2;
+    public static final int LUMA = 3;
+
+    private final int[][] histograms;
+    private final long pixelCount;
+
+    /**
+     * @param histograms Four 256-entry histograms indexed by channel
+     */
+    ImageStatistics(int[][] histograms, long pixelCount) {
+        this.histograms = histograms;
+        this.pixelCount = pixelCount;
+    }
+
+    public long getPixelCount() {
+        return pixelCount;
+    }
+
+    /**
+     * Get the histogram of a channel; the array must not be modified.
+     */
+    public int[] getHistogram(int channel) {
+        return histograms[channel];
+    }
+
+    public int getMin(int channel) {
+        int[] h = histograms[channel];
+        for (int v = 0; v < 256; v++) {
+            if (h[v] > 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    public int getMax(int channel) {
+        int[] h = histograms[channel];
+        for (int v = 255; v >= 0; v--) {
+            if (h[v] > 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    public double getMean(int channel) {
+        if (pixelCount == 0) {
+            return 0;
+        }
+        int[] h = histograms[channel];
+        long sum = 0;
+        for (int v = 0; v < 256; v++) {
+            sum += (long) v * h[v];
+        }
+        return (double) sum / pixelCount;
+    }
+
+    /**
+     * Number of pixels at 0 in a channel.
+     */
+    public int getClippedShadows(int channel) {
+        return histograms[channel][0];
+    }
+
+    /**
+     * Number of pixels at 255 in a channel.
+     */
+    public int getClippedHighlights(int channel) {
+        return histograms[channel][255];
+    }
+}
@@ -0,0 +1,285 @@
+package com.photoviewer.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes JPEG files at the marker segment level so that metadata survives a
+ * save. A file whose pixels were not edited is copied with only its EXIF
+ * orientation changed, which is lossless and does not decode the image.
+ * Edited images are encoded again with the metadata segments of the original
+ * file spliced in.
+ */
+public class JpegRewriter {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP14 = 0xEE;
+    private static final int MARKER_COM = 0xFE;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+    // Offset of the TIFF header in an EXIF segment: marker, length, "Exif\0\0"
+    private static final int TIFF_START = 4 + EXIF_HEADER.length;
+    private static final float QUALITY = 0.92f;
+
+    /**
+     * The marker segments before the image data, and the stream positioned
+     * after the start-of-scan marker.
+     */
+    private static class Header {
+        final List<byte[]> segments = new ArrayList<>();
+        DataInputStream rest;
+    }
+
+    /**
+     * Whether a file name has a JPEG extension.
+     */
+    public static boolean isJpeg(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /**
+     * Copy a JPEG file with a new EXIF orientation, keeping the compressed
+     * image data and all other metadata as they are. The target may be the
+     * source itself.
+     *
+     * @return false if the orientation cannot be recorded without rebuilding
+     *         the EXIF block (it has no orientation entry); nothing is written
+     */
+    public static boolean writeOrientation(File source, File target, int orientation) throws IOException {
+        File temp;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(source), 65536)) {
+            Header header = readHeader(input);
+            byte[] exif = findExif(header.segments);
+            if (exif == null) {
+                if (orientation != Orientation.NORMAL) {
+                    header.segments.add(leadingAppCount(header.segments), createExif(orientation));
+                }
+            } else if (!setOrientation(exif, orientation) && orientation != Orientation.NORMAL) {
+                return false;
+            }
+            temp = write(target, header.segments, header.rest);
+        }
+        replace(temp, target);
+        return true;
+    }
+
+    /**
+     * Encode an image as JPEG, carrying over the application and comment
+     * segments (EXIF, XMP, ICC profile, IPTC) of the file it was loaded from.
+     * The image is expected to be upright, so the EXIF orientation is reset.
+     *
+     * @param source The original JPEG, or null to write without metadata
+     */
+    public static void writeWithMetadata(BufferedImage image, File source, File target) throws IOException {
+        Header encoded = readHeader(new ByteArrayInputStream(encode(image)));
+        List<byte[]> segments = encoded.segments;
+        if (source != null) {
+            try (InputStream input = new BufferedInputStream(new FileInputStream(source), 65536)) {
+                List<byte[]> kept = new ArrayList<>();
+                for (byte[] segment : readHeader(input).segments) {
+                    int marker = segment[1] & 0xFF;
+                    // APP0 (JFIF) and APP14 (Adobe colour transform) describe
+                    // the encoding and must come from the new data
+                    boolean metadata = marker > MARKER_APP0 && marker < MARKER_APP14 || marker == MARKER_COM;
+                    if (metadata) {
+                        kept.add(segment);
+                    }
+                }
+                byte[] exif = findExif(kept);
+                if (exif != null) {
+                    setOrientation(exif, Orientation.NORMAL);
+                }
+                segments.addAll(leadingAppCount(segments), kept);
+            }
+        }
+        replace(write(target, segments, encoded.rest), target);
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        // The JPEG writer does not accept alpha
+        if (image.getColorModel().hasAlpha() || image.getType() == BufferedImage.TYPE_CUSTOM) {
+            BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.drawImage(image, 0, 0, java.awt.Color.WHITE, null);
+            g.dispose();
+            image = rgb;
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(QUALITY);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the marker segments up to the start of scan. Each segment is kept
+     * whole, marker and length included.
+     */
+    private static Header readHeader(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != MARKER_SOI) {
+            throw new IOException("Not a JPEG file");
+        }
+        Header header = new Header();
+        while (true) {
+            int b = in.readUnsignedByte();
+            if (b != 0xFF) {
+                throw new IOException("Corrupt JPEG marker");
+            }
+            int marker = in.readUnsignedByte();
+            while (marker == 0xFF) {
+                marker = in.readUnsignedByte();
+            }
+            if (marker == MARKER_SOS) {
+                header.rest = in;
+                return header;
+            }
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                throw new IOException("Corrupt JPEG segment");
+            }
+            byte[] segment = new byte[length + 2];
+            segment[0] = (byte) 0xFF;
+            segment[1] = (byte) marker;
+            segment[2] = (byte) (length >> 8);
+            segment[3] = (byte) length;
+            in.readFully(segment, 4, length - 2);
+            header.segments.add(segment);
+        }
+    }
+
+    /**
+     * Write SOI, the segments, SOS and the rest of the stream to a temporary
+     * file next to the target.
+     */
+    private static File write(File target, List<byte[]> segments, InputStream rest) throws IOException {
+        File temp = File.createTempFile(".save", ".tmp", target.getAbsoluteFile().getParentFile());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+            out.write(0xFF);
+            out.write(MARKER_SOI);
+            for (byte[] segment : segments) {
+                out.write(segment);
+            }
+            out.write(0xFF);
+            out.write(MARKER_SOS);
+            rest.transferTo(out);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Move a fully written file over the target, after the source has been
+     * closed since the two may be the same file.
+     */
+    private static void replace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Number of APP0 segments at the start, which must stay first.
+     */
+    private static int leadingAppCount(List<byte[]> segments) {
+        int i = 0;
+        while (i < segments.size() && (segments.get(i)[1] & 0xFF) == MARKER_APP0) {
+            i++;
+        }
+        return i;
+    }
+
+    private static byte[] findExif(List<byte[]> segments) {
+        for (byte[] segment : segments) {
+            if ((segment[1] & 0xFF) == MARKER_APP1 && segment.length > TIFF_START + 8) {
+                boolean exif = true;
+                for (int i = 0; i < EXIF_HEADER.length; i++) {
+                    exif &= segment[4 + i] == EXIF_HEADER[i];
+                }
+                if (exif) {
+                    return segment;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Overwrite the orientation entry of IFD0 in an EXIF segment.
+     *
+     * @return false if there is no orientation entry
+     */
+    private static boolean setOrientation(byte[] exif, int orientation) {
+        ByteBuffer tiff = ByteBuffer.wrap(exif, TIFF_START, exif.length - TIFF_START).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        try {
+            int ifd = tiff.getInt(4);
+            int count = tiff.getShort(ifd) & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + i * 12;
+                if ((tiff.getShort(entry) & 0xFFFF) == TAG_ORIENTATION && (tiff.getShort(entry + 2) & 0xFFFF) == 3) {
+                    tiff.putShort(entry + 8, (short) orientation);
+                    return true;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Offsets pointing outside the segment
+        }
+        return false;
+    }
+
+    /**
+     * Build an EXIF segment holding only an orientation entry.
+     */
+    private static byte[] createExif(int orientation) {
+        // TIFF header, one-entry IFD0 and the offset of the next IFD
+        int tiffLength = 8 + 2 + 12 + 4;
+        ByteBuffer segment = ByteBuffer.allocate(TIFF_START + tiffLength);
+        segment.put((byte) 0xFF).put((byte) MARKER_APP1).putShort((short) (2 + EXIF_HEADER.length + tiffLength));
+        segment.put(EXIF_HEADER);
+        segment.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        segment.putShort((short) 1);
+        segment.putShort((short) TAG_ORIENTATION).putShort((short) 3).putInt(1);
+        segment.putShort((short) orientation).putShort((short) 0);
+        segment.putInt(0);
+        return segment.array();
+    }
+}
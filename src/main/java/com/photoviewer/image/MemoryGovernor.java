@@ -0,0 +1,222 @@
+package com.photoviewer.image;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import javax.management.NotificationEmitter;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the memory held by images within the heap. Every cache of image
+ * data registers a pool that reports its size and can release part of it;
+ * when the pools together go over their budget, or the heap is still nearly
+ * full after a garbage collection, the pools are trimmed in priority order,
+ * least valuable first.
+ * <p>
+ * Pools are queried and trimmed on the JavaFX thread only.
+ */
+public class MemoryGovernor {
+    // Share of the maximum heap the registered pools may use together
+    private static final double BUDGET_SHARE = 0.5;
+    // Heap usage after a collection that counts as memory pressure, and the
+    // usage to get back to when it happens
+    private static final double PRESSURE_SHARE = 0.85;
+    private static final double RELIEVED_SHARE = 0.7;
+
+    private static final MemoryGovernor INSTANCE = new MemoryGovernor();
+
+    private final List<Registration> pools = new CopyOnWriteArrayList<>();
+    private final long budget;
+
+    /**
+     * What a pool holds, in the order pools are trimmed.
+     */
+    public enum Priority {
+        /** Images decoded ahead of time, which can be decoded again. */
+        PREFETCH,
+        /** Derived images such as mipmaps and tiles, rebuilt on demand. */
+        CACHE,
+        /** Undo and redo history, which cannot be recreated. */
+        HISTORY,
+        /** What is on screen; tracked but never trimmed. */
+        VISIBLE
+    }
+
+    /**
+     * A cache of image data.
+     */
+    public interface Pool {
+        /**
+         * Get the number of bytes held.
+         */
+        long getBytes();
+
+        /**
+         * Release about the given number of bytes, or as much as possible.
+         *
+         * @return The number of bytes released
+         */
+        long trim(long bytes);
+    }
+
+    /**
+     * Bytes held by one registered pool.
+     */
+    public static class Usage {
+        public final String name;
+        public final Priority priority;
+        public final long bytes;
+
+        Usage(String name, Priority priority, long bytes) {
+            this.name = name;
+            this.priority = priority;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Registration {
+        final String name;
+        final Priority priority;
+        final Pool pool;
+
+        Registration(String name, Priority priority, Pool pool) {
+            this.name = name;
+            this.priority = priority;
+            this.pool = pool;
+        }
+    }
+
+    private MemoryGovernor() {
+        budget = (long) (Runtime.getRuntime().maxMemory() * BUDGET_SHARE);
+        listenForPressure();
+    }
+
+    /**
+     * Get the governor used by the application.
+     */
+    public static MemoryGovernor get() {
+        return INSTANCE;
+    }
+
+    public void register(String name, Priority priority, Pool pool) {
+        pools.add(new Registration(name, priority, pool));
+    }
+
+    public void unregister(Pool pool) {
+        pools.removeIf(registration -> registration.pool == pool);
+    }
+
+    /**
+     * Make room for an image of the given size that is about to be
+     * allocated, trimming pools if the total would go over budget.
+     */
+    public void ensureRoom(long bytes) {
+        long over = getTrackedBytes() + bytes - budget;
+        if (over > 0) {
+            release(over);
+        }
+    }
+
+    /**
+     * Trim pools in priority order until the given number of bytes has been
+     * released or only visible images are left.
+     *
+     * @return The number of bytes released
+     */
+    public long release(long bytes) {
+        List<Registration> ordered = new ArrayList<>(pools);
+        ordered.sort(Comparator.comparing(registration -> registration.priority));
+        long released = 0;
+        for (Registration registration : ordered) {
+            if (released >= bytes || registration.priority == Priority.VISIBLE) {
+                break;
+            }
+            released += registration.pool.trim(bytes - released);
+        }
+        return released;
+    }
+
+    /**
+     * Get the total size of all pools.
+     */
+    public long getTrackedBytes() {
+        long total = 0;
+        for (Registration registration : pools) {
+            total += registration.pool.getBytes();
+        }
+        return total;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the size of each registered pool, in trimming order.
+     */
+    public List<Usage> getUsage() {
+        List<Usage> usage = new ArrayList<>();
+        for (Registration registration : pools) {
+            usage.add(new Usage(registration.name, registration.priority, registration.pool.getBytes()));
+        }
+        usage.sort(Comparator.comparing(u -> u.priority));
+        return usage;
+    }
+
+    /**
+     * Get the memory used by the pixels of an image.
+     */
+    public static long bytesOf(BufferedImage image) {
+        if (image == null) {
+            return 0;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Get the memory used by the pixels of a JavaFX image, stored as 4 bytes
+     * per pixel.
+     */
+    public static long bytesOf(Image image) {
+        return image == null ? 0 : (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    /**
+     * Ask to be told when a heap pool is still nearly full after a
+     * collection; the usage then is live data, so caches must shrink.
+     */
+    private void listenForPressure() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * PRESSURE_SHARE));
+            }
+        }
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                return;
+            }
+            MemoryUsage usage = MemoryNotificationInfo.from(
+                    (javax.management.openmbean.CompositeData) notification.getUserData()).getUsage();
+            long excess = usage.getUsed() - (long) (usage.getMax() * RELIEVED_SHARE);
+            if (excess > 0) {
+                Platform.runLater(() -> {
+                    long released = release(excess);
+                    System.err.println("Memory is low, released " + (released >> 20) + " MB of cached images");
+                });
+            }
+        }, null, null);
+    }
+}
@@ -0,0 +1,78 @@
+package com.photoviewer.image;
+
+/**
+ * Geometry of the eight EXIF orientations. Images are kept in their stored
+ * (raw) pixel layout and the orientation is applied as a transform when
+ * they are displayed or saved.
+ */
+public final class Orientation {
+    public static final int NORMAL = 1;
+
+    private Orientation() {
+    }
+
+    /**
+     * Whether the orientation swaps width and height (5 to 8).
+     */
+    public static boolean swapsAxes(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    public static int displayWidth(int orientation, int rawWidth, int rawHeight) {
+        return swapsAxes(orientation) ? rawHeight : rawWidth;
+    }
+
+    public static int displayHeight(int orientation, int rawWidth, int rawHeight) {
+        return swapsAxes(orientation) ? rawWidth : rawHeight;
+    }
+
+    /**
+     * The orientation that shows an image rotated a further 90 degrees
+     * clockwise.
+     */
+    public static int rotateRight(int orientation) {
+        double[] m = matrix(orientation, 0, 0);
+        // Rotating the displayed coordinates clockwise maps (x, y) to (-y, x)
+        double m00 = -m[1];
+        double m10 = m[0];
+        double m01 = -m[3];
+        double m11 = m[2];
+        for (int candidate = 1; candidate <= 8; candidate++) {
+            double[] c = matrix(candidate, 0, 0);
+            if (c[0] == m00 && c[1] == m10 && c[2] == m01 && c[3] == m11) {
+                return candidate;
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Affine transform from raw image coordinates to displayed coordinates,
+     * as {m00, m10, m01, m11, m02, m12}: the flat-matrix order used by both
+     * java.awt.geom.AffineTransform and GraphicsContext.transform. The
+     * linear part is always a rotation or reflection, so the inverse is its
+     * transpose.
+     */
+    public static double[] matrix(int orientation, int rawWidth, int rawHeight) {
+        double w = rawWidth;
+        double h = rawHeight;
+        switch (orientation) {
+            case 2: // Mirrored horizontally
+                return new double[] { -1, 0, 0, 1, w, 0 };
+            case 3: // Rotated 180
+                return new double[] { -1, 0, 0, -1, w, h };
+            case 4: // Mirrored vertically
+                return new double[] { 1, 0, 0, -1, 0, h };
+            case 5: // Transposed
+                return new double[] { 0, 1, 1, 0, 0, 0 };
+            case 6: // Rotate 90 clockwise to display
+                return new double[] { 0, 1, -1, 0, h, 0 };
+            case 7: // Transverse
+                return new double[] { 0, -1, -1, 0, h, w };
+            case 8: // Rotate 90 counter-clockwise to display
+                return new double[] { 0, -1, 1, 0, 0, w };
+            default:
+                return new double[] { 1, 0, 0, 1, 0, 0 };
+        }
+    }
+}
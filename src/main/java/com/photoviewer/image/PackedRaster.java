@@ -0,0 +1,62 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Direct access to the int[] pixels of a TYPE_INT_RGB or TYPE_INT_ARGB image,
+ * including subimages, so kernels can process whole rows without going
+ * through Java2D or per-pixel getRGB/setRGB calls.
+ */
+public final class PackedRaster {
+    public final int[] data;
+    public final int offset;
+    public final int stride;
+    public final int width;
+    public final int height;
+    public final boolean hasAlpha;
+
+    private PackedRaster(int[] data, int offset, int stride, int width, int height, boolean hasAlpha) {
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+    }
+
+    /**
+     * Get direct access to an image's pixels, or null if the image is not a
+     * packed int RGB/ARGB image.
+     */
+    public static PackedRaster of(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        Raster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (!(buffer instanceof DataBufferInt) || buffer.getNumBanks() != 1
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return null;
+        }
+
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        // Subimages share the parent's buffer and are offset by the translation
+        int offset = buffer.getOffset()
+                - raster.getSampleModelTranslateX()
+                - raster.getSampleModelTranslateY() * stride;
+        return new PackedRaster(((DataBufferInt) buffer).getData(), offset, stride,
+                image.getWidth(), image.getHeight(), type == BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Index of the first pixel of a row in {@link #data}.
+     */
+    public int rowOffset(int y) {
+        return offset + y * stride;
+    }
+}
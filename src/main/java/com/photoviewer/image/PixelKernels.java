@@ -0,0 +1,89 @@
+package com.photoviewer.image;
+
+/**
+ * Row-oriented pixel kernels for packed ARGB data. Two implementations
+ * exist: {@link VectorPixelKernels} using the incubating Vector API, and
+ * {@link ScalarPixelKernels} as a portable fallback. The implementation is
+ * chosen once at startup, based on whether the jdk.incubator.vector module is
+ * available (it must be added with --add-modules); setting the system
+ * property photoviewer.simd=false forces the scalar kernels.
+ */
+public abstract class PixelKernels {
+    private static final PixelKernels INSTANCE = select();
+
+    /**
+     * Get the kernels selected for this JVM.
+     */
+    public static PixelKernels get() {
+        return INSTANCE;
+    }
+
+    private static PixelKernels select() {
+        if (!"false".equalsIgnoreCase(System.getProperty("photoviewer.simd"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorPixelKernels();
+            } catch (Throwable e) {
+                // The module is present but not usable here (e.g. not readable)
+                System.err.println("Vector kernels unavailable, using scalar: " + e);
+            }
+        }
+        return new ScalarPixelKernels();
+    }
+
+    /**
+     * Name of the implementation, for diagnostics.
+     */
+    public abstract String getName();
+
+    /**
+     * Composite non-premultiplied ARGB source pixels over non-premultiplied
+     * ARGB destination pixels (Porter-Duff source over).
+     */
+    public abstract void compositeSrcOver(int[] src, int srcOff, int[] dst, int dstOff, int length);
+
+    /**
+     * Composite non-premultiplied ARGB source pixels over destination pixels
+     * that are treated as opaque; the result alpha is 255 wherever the source
+     * is not fully transparent. Pixels under a transparent source are left
+     * as they are.
+     */
+    public abstract void compositeSrcOverOpaque(int[] src, int srcOff, int[] dst, int dstOff, int length);
+
+    /**
+     * Convert non-premultiplied ARGB pixels to premultiplied, in place.
+     */
+    public abstract void premultiply(int[] pixels, int off, int length);
+
+    /**
+     * Convert premultiplied ARGB pixels to non-premultiplied, in place.
+     */
+    public abstract void unpremultiply(int[] pixels, int off, int length);
+
+    /**
+     * Copy RGB pixels into ARGB form with full opacity.
+     */
+    public abstract void rgbToArgb(int[] src, int srcOff, int[] dst, int dstOff, int length);
+
+    /**
+     * Convert 3-byte BGR pixels (TYPE_3BYTE_BGR layout) to opaque ARGB.
+     */
+    public abstract void bgrToArgb(byte[] src, int srcOff, int[] dst, int dstOff, int length);
+
+    /**
+     * Convolve a row of premultiplied ARGB pixels with a symmetric kernel of
+     * odd length, clamping at the row ends. Source and destination must not
+     * overlap.
+     */
+    public abstract void convolveHorizontal(int[] src, int srcOff, int[] dst, int dstOff, int length,
+            float[] kernel);
+
+    /**
+     * Weighted sum of several rows of premultiplied ARGB pixels, i.e. one
+     * output row of a vertical convolution. Row k is read from rows[k]
+     * starting at rowOffsets[k] and weighted by kernel[k]. The destination
+     * may be one of the input rows.
+     */
+    public abstract void convolveVertical(int[][] rows, int[] rowOffsets, int[] dst, int dstOff, int length,
+            float[] kernel);
+}
@@ -0,0 +1,355 @@
+package com.photoviewer.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes non-interlaced 8-bit PNGs straight into packed int images.
+ * <p>
+ * Rows are inflated and unfiltered in bands on the calling thread; each row
+ * filter depends on the row above, so that part is sequential. Finished
+ * bands are converted to pixels on the common pool while the next band is
+ * unfiltered, using two band buffers. Other bit depths and interlaced images
+ * are left to the next decoder.
+ */
+public class PngDecoder implements ImageDecoder {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int BAND_ROWS = 64;
+
+    private static final int CHUNK_IHDR = 0x49484452;
+    private static final int CHUNK_PLTE = 0x504C5445;
+    private static final int CHUNK_TRNS = 0x74524E53;
+    private static final int CHUNK_IDAT = 0x49444154;
+    private static final int CHUNK_IEND = 0x49454E44;
+
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGB_ALPHA = 6;
+
+    /**
+     * Image header and the chunks that affect how pixels are converted.
+     */
+    private static class Header {
+        int width;
+        int height;
+        int bitDepth;
+        int colorType;
+        int interlace;
+        byte[] palette;
+        byte[] transparency;
+
+        int channels() {
+            switch (colorType) {
+                case RGB:
+                    return 3;
+                case GRAY_ALPHA:
+                    return 2;
+                case RGB_ALPHA:
+                    return 4;
+                default:
+                    return 1;
+            }
+        }
+
+        boolean supported() {
+            return bitDepth == 8 && interlace == 0 && colorType != 1 && colorType != 5 && colorType <= RGB_ALPHA
+                    && (colorType != PALETTE || palette != null);
+        }
+
+        boolean hasAlpha() {
+            return colorType == GRAY_ALPHA || colorType == RGB_ALPHA || transparency != null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "PNG";
+    }
+
+    @Override
+    public boolean accepts(byte[] header) {
+        if (header.length < SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (header[i] != SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public BufferedImage decode(File file, int targetSize) throws IOException {
+        if (targetSize > 0) {
+            // Every row has to be inflated anyway; subsampling is left to ImageIO
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            in.skipBytes(SIGNATURE.length);
+            Header header = new Header();
+            int length;
+            while (true) {
+                length = in.readInt();
+                int type = in.readInt();
+                if (type == CHUNK_IDAT) {
+                    break;
+                }
+                if (type == CHUNK_IEND) {
+                    throw new IOException("PNG has no image data");
+                }
+                if (type == CHUNK_IHDR) {
+                    header.width = in.readInt();
+                    header.height = in.readInt();
+                    header.bitDepth = in.readUnsignedByte();
+                    header.colorType = in.readUnsignedByte();
+                    in.skipBytes(2); // Compression and filter method, always 0
+                    header.interlace = in.readUnsignedByte();
+                } else if (type == CHUNK_PLTE || type == CHUNK_TRNS) {
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    if (type == CHUNK_PLTE) {
+                        header.palette = data;
+                    } else {
+                        header.transparency = data;
+                    }
+                } else {
+                    skipFully(in, length);
+                }
+                in.skipBytes(4); // CRC
+            }
+            if (!header.supported() || (long) header.width * header.height > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            Inflater inflater = new Inflater();
+            try {
+                InputStream idat = new InflaterInputStream(new IdatStream(in, length), inflater, 65536);
+                return decodePixels(header, new DataInputStream(idat));
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private static BufferedImage decodePixels(Header header, DataInputStream data) throws IOException {
+        int width = header.width;
+        int height = header.height;
+        int bpp = header.channels();
+        int stride = width * bpp;
+        BufferedImage image = new BufferedImage(width, height,
+                header.hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] palette = header.colorType == PALETTE ? paletteColors(header) : null;
+
+        byte[][] bands = { new byte[BAND_ROWS * stride], new byte[BAND_ROWS * stride] };
+        CompletableFuture<?>[] converting = new CompletableFuture<?>[2];
+        byte[] prev = new byte[stride];
+        int prevOffset = 0;
+        try {
+            for (int y0 = 0, band = 0; y0 < height; y0 += BAND_ROWS, band ^= 1) {
+                byte[] buffer = bands[band];
+                if (converting[band] != null) {
+                    converting[band].join();
+                }
+                int rows = Math.min(BAND_ROWS, height - y0);
+                for (int r = 0; r < rows; r++) {
+                    int filter = data.read();
+                    if (filter < 0) {
+                        throw new EOFException("PNG image data is truncated");
+                    }
+                    int offset = r * stride;
+                    data.readFully(buffer, offset, stride);
+                    unfilter(filter, buffer, offset, prev, prevOffset, stride, bpp);
+                    prev = buffer;
+                    prevOffset = offset;
+                }
+                int first = y0;
+                converting[band] = CompletableFuture.runAsync(
+                        () -> convert(header, buffer, first, rows, palette, pixels));
+            }
+        } finally {
+            for (CompletableFuture<?> pending : converting) {
+                if (pending != null) {
+                    pending.join();
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Reverse the filter of one row in place, given the unfiltered row above
+     * (all zeros for the first row).
+     */
+    private static void unfilter(int filter, byte[] row, int offset, byte[] prev, int prevOffset, int stride,
+            int bpp) throws IOException {
+        switch (filter) {
+            case 0: // None
+                break;
+            case 1: // Sub
+                for (int i = bpp; i < stride; i++) {
+                    row[offset + i] += row[offset + i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 0; i < stride; i++) {
+                    row[offset + i] += prev[prevOffset + i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 0; i < bpp; i++) {
+                    row[offset + i] += (prev[prevOffset + i] & 0xFF) >>> 1;
+                }
+                for (int i = bpp; i < stride; i++) {
+                    row[offset + i] += ((row[offset + i - bpp] & 0xFF) + (prev[prevOffset + i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 0; i < bpp; i++) {
+                    row[offset + i] += prev[prevOffset + i];
+                }
+                for (int i = bpp; i < stride; i++) {
+                    int a = row[offset + i - bpp] & 0xFF;
+                    int b = prev[prevOffset + i] & 0xFF;
+                    int c = prev[prevOffset + i - bpp] & 0xFF;
+                    int pa = Math.abs(b - c);
+                    int pb = Math.abs(a - c);
+                    int pc = Math.abs(a + b - 2 * c);
+                    int predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                    row[offset + i] += predictor;
+                }
+                break;
+            default:
+                throw new IOException("Invalid PNG row filter " + filter);
+        }
+    }
+
+    /**
+     * Convert unfiltered rows to packed ARGB or RGB pixels.
+     */
+    private static void convert(Header header, byte[] band, int y0, int rows, int[] palette, int[] pixels) {
+        int width = header.width;
+        byte[] trns = header.transparency;
+        int i = 0;
+        int p = y0 * width;
+        int end = p + rows * width;
+        switch (header.colorType) {
+            case RGB_ALPHA:
+                for (; p < end; p++, i += 4) {
+                    pixels[p] = (band[i + 3] & 0xFF) << 24 | (band[i] & 0xFF) << 16 | (band[i + 1] & 0xFF) << 8
+                            | band[i + 2] & 0xFF;
+                }
+                break;
+            case RGB:
+                // A tRNS chunk names one 16-bit RGB value as transparent
+                int key = trns != null && trns.length >= 6 ? (trns[1] & 0xFF) << 16 | (trns[3] & 0xFF) << 8
+                        | trns[5] & 0xFF : -1;
+                int opaque = trns != null ? 0xFF000000 : 0;
+                for (; p < end; p++, i += 3) {
+                    int rgb = (band[i] & 0xFF) << 16 | (band[i + 1] & 0xFF) << 8 | band[i + 2] & 0xFF;
+                    pixels[p] = rgb == key ? rgb : rgb | opaque;
+                }
+                break;
+            case GRAY_ALPHA:
+                for (; p < end; p++, i += 2) {
+                    int v = band[i] & 0xFF;
+                    pixels[p] = (band[i + 1] & 0xFF) << 24 | v << 16 | v << 8 | v;
+                }
+                break;
+            case GRAY:
+                int grayKey = trns != null && trns.length >= 2 ? trns[1] & 0xFF : -1;
+                int grayOpaque = trns != null ? 0xFF000000 : 0;
+                for (; p < end; p++, i++) {
+                    int v = band[i] & 0xFF;
+                    pixels[p] = (v == grayKey ? 0 : grayOpaque) | v << 16 | v << 8 | v;
+                }
+                break;
+            default: // PALETTE
+                for (; p < end; p++, i++) {
+                    pixels[p] = palette[band[i] & 0xFF];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Expand PLTE and tRNS to 256 packed colours; indices past the end of
+     * the palette are black.
+     */
+    private static int[] paletteColors(Header header) {
+        int[] colors = new int[256];
+        byte[] plte = header.palette;
+        byte[] trns = header.transparency;
+        for (int i = 0; i < Math.min(256, plte.length / 3); i++) {
+            int alpha = trns == null ? 0 : i < trns.length ? trns[i] & 0xFF : 0xFF;
+            colors[i] = alpha << 24 | (plte[3 * i] & 0xFF) << 16 | (plte[3 * i + 1] & 0xFF) << 8
+                    | plte[3 * i + 2] & 0xFF;
+        }
+        return colors;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * The concatenated data of consecutive IDAT chunks.
+     */
+    private static class IdatStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean done;
+
+        IdatStream(DataInputStream in, int firstLength) {
+            this.in = in;
+            this.remaining = firstLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (remaining == 0) {
+                if (done) {
+                    return -1;
+                }
+                in.skipBytes(4); // CRC
+                int length = in.readInt();
+                if (in.readInt() != CHUNK_IDAT) {
+                    done = true;
+                    return -1;
+                }
+                remaining = length;
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("PNG image data is truncated");
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.photoviewer.image;
+
+/**
+ * Portable pixel kernels written as plain loops.
+ */
+public class ScalarPixelKernels extends PixelKernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void compositeSrcOver(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = src[srcOff + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            if (sa == 255) {
+                dst[dstOff + i] = s;
+                continue;
+            }
+            dst[dstOff + i] = blend(s, dst[dstOff + i]);
+        }
+    }
+
+    /**
+     * Source-over for a single pixel; same arithmetic as the vector kernel.
+     */
+    static int blend(int s, int d) {
+        float sa = (s >>> 24) / 255f;
+        float da = (d >>> 24) / 255f;
+        float dw = da * (1f - sa);
+        float oa = sa + dw;
+        if (oa == 0f) {
+            return 0;
+        }
+        float inv = 1f / oa;
+        int r = (int) ((((s >> 16) & 0xFF) * sa + ((d >> 16) & 0xFF) * dw) * inv + 0.5f);
+        int g = (int) ((((s >> 8) & 0xFF) * sa + ((d >> 8) & 0xFF) * dw) * inv + 0.5f);
+        int b = (int) (((s & 0xFF) * sa + (d & 0xFF) * dw) * inv + 0.5f);
+        int a = (int) (oa * 255f + 0.5f);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    @Override
+    public void compositeSrcOverOpaque(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = src[srcOff + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            int d = dst[dstOff + i];
+            if (sa == 255) {
+                dst[dstOff + i] = s;
+                continue;
+            }
+            float a = sa / 255f;
+            float ia = 1f - a;
+            int r = (int) (((s >> 16) & 0xFF) * a + ((d >> 16) & 0xFF) * ia + 0.5f);
+            int g = (int) (((s >> 8) & 0xFF) * a + ((d >> 8) & 0xFF) * ia + 0.5f);
+            int b = (int) ((s & 0xFF) * a + (d & 0xFF) * ia + 0.5f);
+            dst[dstOff + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void premultiply(int[] pixels, int off, int length) {
+        for (int i = off; i < off + length; i++) {
+            int p = pixels[i];
+            int a = p >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            float f = a / 255f;
+            int r = (int) (((p >> 16) & 0xFF) * f + 0.5f);
+            int g = (int) (((p >> 8) & 0xFF) * f + 0.5f);
+            int b = (int) ((p & 0xFF) * f + 0.5f);
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels, int off, int length) {
+        for (int i = off; i < off + length; i++) {
+            int p = pixels[i];
+            int a = p >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            if (a == 0) {
+                pixels[i] = 0;
+                continue;
+            }
+            float f = 255f / a;
+            int r = Math.min(255, (int) (((p >> 16) & 0xFF) * f + 0.5f));
+            int g = Math.min(255, (int) (((p >> 8) & 0xFF) * f + 0.5f));
+            int b = Math.min(255, (int) ((p & 0xFF) * f + 0.5f));
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void rgbToArgb(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOff + i] = src[srcOff + i] | 0xFF000000;
+        }
+    }
+
+    @Override
+    public void bgrToArgb(byte[] src, int srcOff, int[] dst, int dstOff, int length) {
+        int s = srcOff;
+        for (int i = 0; i < length; i++) {
+            int b = src[s++] & 0xFF;
+            int g = src[s++] & 0xFF;
+            int r = src[s++] & 0xFF;
+            dst[dstOff + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void convolveHorizontal(int[] src, int srcOff, int[] dst, int dstOff, int length, float[] kernel) {
+        int radius = kernel.length / 2;
+        for (int x = 0; x < length; x++) {
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0; k < kernel.length; k++) {
+                int sx = Math.max(0, Math.min(length - 1, x + k - radius));
+                int p = src[srcOff + sx];
+                float w = kernel[k];
+                a += (p >>> 24) * w;
+                r += ((p >> 16) & 0xFF) * w;
+                g += ((p >> 8) & 0xFF) * w;
+                b += (p & 0xFF) * w;
+            }
+            dst[dstOff + x] = pack(a, r, g, b);
+        }
+    }
+
+    @Override
+    public void convolveVertical(int[][] rows, int[] rowOffsets, int[] dst, int dstOff, int length,
+            float[] kernel) {
+        for (int x = 0; x < length; x++) {
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0; k < kernel.length; k++) {
+                int p = rows[k][rowOffsets[k] + x];
+                float w = kernel[k];
+                a += (p >>> 24) * w;
+                r += ((p >> 16) & 0xFF) * w;
+                g += ((p >> 8) & 0xFF) * w;
+                b += (p & 0xFF) * w;
+            }
+            dst[dstOff + x] = pack(a, r, g, b);
+        }
+    }
+
+    /**
+     * Round and clamp float channels back into a packed ARGB pixel.
+     */
+    static int pack(float a, float r, float g, float b) {
+        int ia = clamp((int) (a + 0.5f));
+        int ir = clamp((int) (r + 0.5f));
+        int ig = clamp((int) (g + 0.5f));
+        int ib = clamp((int) (b + 0.5f));
+        return (ia << 24) | (ir << 16) | (ig << 8) | ib;
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(v, 255);
+    }
+}
@@ -0,0 +1,120 @@
+package com.photoviewer.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Rectangular selection over the current image that can be dragged to a new
+ * position. The selected pixels are never copied: they are read through a
+ * view over the source image until the move is committed.
+ */
+public class Selection {
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private int offsetX = 0;
+    private int offsetY = 0;
+
+    public Selection(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Create a selection spanning two corner points, clamped to the image.
+     *
+     * @return the selection, or null if it would be empty
+     */
+    public static Selection fromCorners(double x1, double y1, double x2, double y2,
+            int imageWidth, int imageHeight) {
+        int left = (int) Math.max(0, Math.floor(Math.min(x1, x2)));
+        int top = (int) Math.max(0, Math.floor(Math.min(y1, y2)));
+        int right = (int) Math.min(imageWidth, Math.ceil(Math.max(x1, x2)));
+        int bottom = (int) Math.min(imageHeight, Math.ceil(Math.max(y1, y2)));
+        if (right - left <= 0 || bottom - top <= 0) {
+            return null;
+        }
+        return new Selection(left, top, right - left, bottom - top);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * X position the selected pixels are currently shown at.
+     */
+    public int getTargetX() {
+        return x + offsetX;
+    }
+
+    /**
+     * Y position the selected pixels are currently shown at.
+     */
+    public int getTargetY() {
+        return y + offsetY;
+    }
+
+    public int getOffsetX() {
+        return offsetX;
+    }
+
+    public int getOffsetY() {
+        return offsetY;
+    }
+
+    public void setOffset(int offsetX, int offsetY) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    public boolean isMoved() {
+        return offsetX != 0 || offsetY != 0;
+    }
+
+    /**
+     * Check whether a point lies inside the selection at its current position.
+     */
+    public boolean containsTarget(double px, double py) {
+        return px >= getTargetX() && px < getTargetX() + width
+                && py >= getTargetY() && py < getTargetY() + height;
+    }
+
+    /**
+     * Check whether the source rectangle still lies inside an image of the
+     * given size (it may not after undo or loading another image).
+     */
+    public boolean fitsWithin(int imageWidth, int imageHeight) {
+        return x + width <= imageWidth && y + height <= imageHeight;
+    }
+
+    public Rectangle getSourceBounds() {
+        return new Rectangle(x, y, width, height);
+    }
+
+    public Rectangle getTargetBounds() {
+        return new Rectangle(getTargetX(), getTargetY(), width, height);
+    }
+
+    /**
+     * Get the selected pixels as a view sharing the source image's raster.
+     */
+    public BufferedImage getView(BufferedImage source) {
+        return source.getSubimage(x, y, width, height);
+    }
+}
@@ -0,0 +1,634 @@
+package com.photoviewer.image;
+
+import javafx.application.Platform;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Periodically saves unsaved edits of the current image to a recovery file,
+ * so that they survive a crash.
+ * <p>
+ * The recovery file names the file the session started from and is
+ * followed by an append-only log of checkpoints. Each checkpoint holds only
+ * the tiles changed since the previous one, so a brush stroke costs a few
+ * kilobytes. Checkpoints end with a commit record, and a torn checkpoint at
+ * the end is ignored on recovery. Once most of the log is made of
+ * overwritten tiles, it is rewritten with only the latest version of each.
+ * <p>
+ * Changes are tracked and changed tiles copied on the JavaFX thread;
+ * hashing, compression and file work run on a background thread.
+ */
+public class SessionAutosave implements ImageChangeListener {
+    private static final int MAGIC = 0x50564153; // "PVAS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int TILE_SIZE = 256;
+    private static final long INTERVAL_SECONDS = 20;
+    // Rewrite the log once it is this many times the size of its live data
+    private static final int COMPACT_RATIO = 2;
+
+    private static final byte RECORD_SIZE = 'S';
+    private static final byte RECORD_TILE = 'T';
+    private static final byte RECORD_COMMIT = 'C';
+
+    private final ImageManager imageManager;
+    private final File file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "autosave");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Session state, only accessed on the JavaFX thread
+    private File source;
+    // Whether tiles not in the log are those of the source file
+    private boolean baseIsSource;
+    private boolean sessionStarted;
+    private boolean fileWritten;
+    private int width;
+    private int height;
+    private int columns;
+    private int loggedOrientation;
+    private BitSet dirty = new BitSet();
+
+    // Only accessed on the executor thread
+    private FileChannel channel;
+    // Compressed size of the latest version of each logged tile
+    private final Map<Integer, Integer> liveTiles = new LinkedHashMap<>();
+    private int logWidth;
+    private int logHeight;
+    // Content hash of the latest version of each logged tile
+    private final Map<Integer, Long> loggedHashes = new HashMap<>();
+
+    /**
+     * A session read back from a recovery file.
+     */
+    public static class Recovery {
+        public final File source;
+        public final BufferedImage image;
+        public final int orientation;
+        public final long savedAt;
+
+        Recovery(File source, BufferedImage image, int orientation, long savedAt) {
+            this.source = source;
+            this.image = image;
+            this.orientation = orientation;
+            this.savedAt = savedAt;
+        }
+    }
+
+    /**
+     * Header and committed contents of a recovery log, with only the latest
+     * version of each tile.
+     */
+    private static class Log {
+        String sourcePath;
+        long sourceLength;
+        long sourceModified;
+        boolean baseIsSource;
+        int width = -1;
+        int height = -1;
+        int orientation = Orientation.NORMAL;
+        long committedAt;
+        // Compressed tile pixels by tile key
+        final Map<Integer, byte[]> tiles = new LinkedHashMap<>();
+    }
+
+    /**
+     * Tiles captured for one checkpoint. Packed int images are copied as
+     * pixels, other types as rasters that are converted on the background
+     * thread.
+     */
+    private static class Checkpoint {
+        byte[] header;
+        int width;
+        int height;
+        int orientation;
+        boolean orientationChanged;
+        // Set for TYPE_INT_RGB, whose pixels still need an opaque alpha
+        boolean opaque;
+        // Set with rasters, to convert them
+        ColorModel colorModel;
+        final List<int[]> tiles = new ArrayList<>();
+        final List<WritableRaster> rasters = new ArrayList<>();
+        final List<Integer> keys = new ArrayList<>();
+
+        int size() {
+            return keys.size();
+        }
+
+        /**
+         * Get the ARGB pixels of a tile.
+         */
+        int[] pixels(int i) {
+            if (colorModel == null) {
+                int[] pixels = tiles.get(i);
+                if (opaque) {
+                    PixelKernels.get().rgbToArgb(pixels, 0, pixels, 0, pixels.length);
+                }
+                return pixels;
+            }
+            WritableRaster raster = rasters.get(i);
+            return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null)
+                    .getRGB(0, 0, raster.getWidth(), raster.getHeight(), null, 0, raster.getWidth());
+        }
+    }
+
+    SessionAutosave(ImageManager imageManager, File file) {
+        this.imageManager = imageManager;
+        this.file = file;
+        executor.scheduleWithFixedDelay(() -> Platform.runLater(this::checkpoint), INTERVAL_SECONDS,
+                INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start a new session after the current image was loaded or saved.
+     *
+     * @param baseIsSource Whether the file now holds exactly the pixels and
+     *                     orientation in memory, so unchanged tiles can be
+     *                     taken from it on recovery
+     */
+    void reset(File source, boolean baseIsSource) {
+        this.source = source;
+        this.baseIsSource = baseIsSource;
+        this.sessionStarted = false;
+        BufferedImage image = imageManager.getCurrentImage();
+        track(image);
+        if (!baseIsSource) {
+            dirty.set(0, tileCount());
+        }
+    }
+
+    @Override
+    public void imageChanged(BufferedImage image, Rectangle changed) {
+        if (image == null) {
+            return;
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            track(image);
+            dirty.set(0, tileCount());
+        } else if (changed == null) {
+            dirty.set(0, tileCount());
+        } else {
+            Rectangle bounds = changed.intersection(new Rectangle(width, height));
+            if (bounds.isEmpty()) {
+                return;
+            }
+            int x0 = bounds.x / TILE_SIZE;
+            int y0 = bounds.y / TILE_SIZE;
+            int x1 = (bounds.x + bounds.width - 1) / TILE_SIZE;
+            int y1 = (bounds.y + bounds.height - 1) / TILE_SIZE;
+            for (int ty = y0; ty <= y1; ty++) {
+                dirty.set(ty * columns + x0, ty * columns + x1 + 1);
+            }
+        }
+    }
+
+    private void track(BufferedImage image) {
+        width = image == null ? 0 : image.getWidth();
+        height = image == null ? 0 : image.getHeight();
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        dirty = new BitSet();
+    }
+
+    private int rows() {
+        return (height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private int tileCount() {
+        return columns * rows();
+    }
+
+    /**
+     * Capture the changed tiles and append them to the log, or delete the
+     * log if everything is saved.
+     */
+    private void checkpoint() {
+        BufferedImage image = imageManager.getCurrentImage();
+        if (image == null || !imageManager.hasUnsavedChanges()) {
+            if (fileWritten) {
+                fileWritten = false;
+                sessionStarted = false;
+                executor.execute(this::delete);
+            }
+            return;
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            track(image);
+            dirty.set(0, tileCount());
+        }
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.width = width;
+        checkpoint.height = height;
+        checkpoint.orientation = imageManager.getOrientation();
+        checkpoint.orientationChanged = checkpoint.orientation != loggedOrientation;
+        if (!sessionStarted) {
+            checkpoint.header = header();
+        }
+        PackedRaster from = PackedRaster.of(image);
+        if (from != null) {
+            checkpoint.opaque = !from.hasAlpha;
+        } else {
+            checkpoint.colorModel = image.getColorModel();
+        }
+        for (int tile = dirty.nextSetBit(0); tile >= 0; tile = dirty.nextSetBit(tile + 1)) {
+            int tx = tile % columns;
+            int ty = tile / columns;
+            int x = tx * TILE_SIZE;
+            int y = ty * TILE_SIZE;
+            int w = Math.min(TILE_SIZE, width - x);
+            int h = Math.min(TILE_SIZE, height - y);
+            if (from != null) {
+                int[] pixels = new int[w * h];
+                for (int row = 0; row < h; row++) {
+                    System.arraycopy(from.data, from.rowOffset(y + row) + x, pixels, row * w, w);
+                }
+                checkpoint.tiles.add(pixels);
+            } else {
+                WritableRaster raster = image.getRaster().createCompatibleWritableRaster(w, h);
+                raster.setRect(-x, -y, image.getRaster());
+                checkpoint.rasters.add(raster);
+            }
+            checkpoint.keys.add(key(tx, ty));
+        }
+        dirty.clear();
+        if (checkpoint.header == null && checkpoint.size() == 0 && !checkpoint.orientationChanged) {
+            return;
+        }
+        loggedOrientation = checkpoint.orientation;
+        sessionStarted = true;
+        fileWritten = true;
+        executor.execute(() -> {
+            try {
+                write(checkpoint);
+            } catch (IOException e) {
+                System.err.println("Error writing recovery file: " + e.getMessage());
+                closeChannel();
+            }
+        });
+    }
+
+    private byte[] header() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(source != null ? source.getAbsolutePath() : "");
+            out.writeLong(source != null ? source.length() : 0);
+            out.writeLong(source != null ? source.lastModified() : 0);
+            out.writeBoolean(baseIsSource && source != null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(Checkpoint checkpoint) throws IOException {
+        if (checkpoint.header != null || checkpoint.width != logWidth || checkpoint.height != logHeight) {
+            liveTiles.clear();
+            loggedHashes.clear();
+            logWidth = checkpoint.width;
+            logHeight = checkpoint.height;
+        }
+        List<int[]> tiles = new ArrayList<>();
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < checkpoint.size(); i++) {
+            int[] pixels = checkpoint.pixels(i);
+            long hash = hash(pixels);
+            Long logged = loggedHashes.put(checkpoint.keys.get(i), hash);
+            // Skip tiles changed and changed back, e.g. by undo
+            if (logged == null || logged != hash) {
+                tiles.add(pixels);
+                keys.add(checkpoint.keys.get(i));
+            }
+        }
+        if (checkpoint.header == null && tiles.isEmpty() && !checkpoint.orientationChanged) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (checkpoint.header != null) {
+            out.write(checkpoint.header);
+        }
+        out.writeByte(RECORD_SIZE);
+        out.writeInt(checkpoint.width);
+        out.writeInt(checkpoint.height);
+        out.writeInt(checkpoint.orientation);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int i = 0; i < tiles.size(); i++) {
+                byte[] compressed = compress(tiles.get(i), deflater);
+                out.writeByte(RECORD_TILE);
+                out.writeInt(keys.get(i));
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                liveTiles.put(keys.get(i), compressed.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        out.writeByte(RECORD_COMMIT);
+        out.writeLong(System.currentTimeMillis());
+        out.flush();
+
+        if (checkpoint.header != null) {
+            // A new session replaces the previous file in one step
+            closeChannel();
+            replace(bytes.toByteArray());
+            return;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+
+        long live = 0;
+        for (int length : liveTiles.values()) {
+            live += length;
+        }
+        if (channel.size() > COMPACT_RATIO * live + TILE_SIZE * TILE_SIZE * 4L) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the log with only the latest version of each tile.
+     */
+    private void compact() throws IOException {
+        closeChannel();
+        Log log = readLog(file);
+        if (log == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(log.sourcePath);
+        out.writeLong(log.sourceLength);
+        out.writeLong(log.sourceModified);
+        out.writeBoolean(log.baseIsSource);
+        out.writeByte(RECORD_SIZE);
+        out.writeInt(log.width);
+        out.writeInt(log.height);
+        out.writeInt(log.orientation);
+        for (Map.Entry<Integer, byte[]> tile : log.tiles.entrySet()) {
+            out.writeByte(RECORD_TILE);
+            out.writeInt(tile.getKey());
+            out.writeInt(tile.getValue().length);
+            out.write(tile.getValue());
+        }
+        out.writeByte(RECORD_COMMIT);
+        out.writeLong(log.committedAt);
+        out.flush();
+        replace(bytes.toByteArray());
+    }
+
+    /**
+     * Replace the recovery file with new contents, so that a crash leaves
+     * either the old or the new file.
+     */
+    private void replace(byte[] contents) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void delete() {
+        closeChannel();
+        liveTiles.clear();
+        loggedHashes.clear();
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Error deleting recovery file: " + e.getMessage());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing recovery file: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Read the session saved in a recovery file.
+     *
+     * @return The recovered image, or null if there is no usable session
+     */
+    public static Recovery load(File file) {
+        try {
+            Log log = readLog(file);
+            if (log == null || log.width <= 0 || log.height <= 0) {
+                return null;
+            }
+            File source = log.sourcePath.isEmpty() ? null : new File(log.sourcePath);
+            BufferedImage image = null;
+            if (log.baseIsSource) {
+                // Unlogged tiles come from the source, which must be unchanged
+                if (source == null || source.length() != log.sourceLength
+                        || source.lastModified() != log.sourceModified) {
+                    System.err.println("Recovery file does not match " + log.sourcePath + " any more");
+                    return null;
+                }
+                BufferedImage base = DecoderRegistry.get().decode(source);
+                if (base != null && base.getWidth() == log.width && base.getHeight() == log.height) {
+                    image = ImageOperations.toArgb(base);
+                }
+            }
+            if (image == null) {
+                image = new BufferedImage(log.width, log.height, BufferedImage.TYPE_INT_ARGB);
+            }
+
+            Inflater inflater = new Inflater();
+            try {
+                int columns = (log.width + TILE_SIZE - 1) / TILE_SIZE;
+                for (Map.Entry<Integer, byte[]> tile : log.tiles.entrySet()) {
+                    int tx = tile.getKey() >>> 16;
+                    int ty = tile.getKey() & 0xFFFF;
+                    int x = tx * TILE_SIZE;
+                    int y = ty * TILE_SIZE;
+                    if (tx >= columns || x >= log.width || y >= log.height) {
+                        continue;
+                    }
+                    int w = Math.min(TILE_SIZE, log.width - x);
+                    int h = Math.min(TILE_SIZE, log.height - y);
+                    image.setRGB(x, y, w, h, decompress(tile.getValue(), w * h, inflater), 0, w);
+                }
+            } finally {
+                inflater.end();
+            }
+            return new Recovery(source, image, log.orientation, log.committedAt);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading recovery file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read the committed part of a recovery log.
+     *
+     * @return The log, or null if the file is missing or not a recovery log
+     */
+    private static Log readLog(File file) throws IOException {
+        if (!file.isFile() || file.length() == 0) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            Log log = new Log();
+            log.sourcePath = in.readUTF();
+            log.sourceLength = in.readLong();
+            log.sourceModified = in.readLong();
+            log.baseIsSource = in.readBoolean();
+
+            // Records since the last commit are applied only once it is seen
+            int width = -1;
+            int height = -1;
+            int orientation = Orientation.NORMAL;
+            Map<Integer, byte[]> pending = new LinkedHashMap<>();
+            boolean resized = false;
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == RECORD_SIZE) {
+                        int w = in.readInt();
+                        int h = in.readInt();
+                        orientation = in.readInt();
+                        if (w != (width < 0 ? log.width : width) || h != (height < 0 ? log.height : height)) {
+                            resized = true;
+                            pending.clear();
+                        }
+                        width = w;
+                        height = h;
+                    } else if (type == RECORD_TILE) {
+                        int key = in.readInt();
+                        byte[] data = new byte[in.readInt()];
+                        in.readFully(data);
+                        pending.put(key, data);
+                    } else if (type == RECORD_COMMIT) {
+                        log.committedAt = in.readLong();
+                        if (resized) {
+                            // Earlier tiles belong to an image of another size
+                            log.tiles.clear();
+                            resized = false;
+                        }
+                        if (width >= 0) {
+                            log.width = width;
+                            log.height = height;
+                            log.orientation = orientation;
+                        }
+                        for (Map.Entry<Integer, byte[]> tile : pending.entrySet()) {
+                            // Keep the log ordered by last write
+                            log.tiles.remove(tile.getKey());
+                            log.tiles.put(tile.getKey(), tile.getValue());
+                        }
+                        pending.clear();
+                        width = -1;
+                        height = -1;
+                    } else {
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // A checkpoint torn by a crash; everything before it is kept
+            }
+            return log;
+        }
+    }
+
+    private static byte[] compress(int[] pixels, Deflater deflater) {
+        ByteBuffer raw = ByteBuffer.allocate(pixels.length * 4);
+        raw.asIntBuffer().put(pixels);
+        deflater.reset();
+        deflater.setInput(raw.array());
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.length);
+        byte[] buffer = new byte[16384];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static int[] decompress(byte[] data, int count, Inflater inflater) throws IOException {
+        byte[] raw = new byte[count * 4];
+        inflater.reset();
+        inflater.setInput(data);
+        try {
+            int offset = 0;
+            while (offset < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, offset, raw.length - offset);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new EOFException("Recovery tile is truncated");
+                }
+                offset += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Recovery tile is corrupt", e);
+        }
+        int[] pixels = new int[count];
+        ByteBuffer.wrap(raw).asIntBuffer().get(pixels);
+        return pixels;
+    }
+
+    private static long hash(int[] pixels) {
+        long hash = 1125899906842597L;
+        for (int pixel : pixels) {
+            hash = 31 * hash + pixel;
+        }
+        return hash;
+    }
+
+    private static int key(int tx, int ty) {
+        return tx << 16 | ty;
+    }
+}
@@ -0,0 +1,173 @@
+package com.photoviewer.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Computes histograms of the current image in the background. The image is
+ * divided into tiles whose histograms are computed in parallel and summed at
+ * the end; tile results are kept, so after a local edit only the tiles in
+ * the dirty region are counted again. Register the service with
+ * {@link ImageManager#addChangeListener} to keep it up to date.
+ */
+public class StatisticsService implements ImageChangeListener {
+    private static final int TILE_SIZE = 256;
+    // Histogram entries per tile: four channels of 256 values
+    private static final int BINS = 4 * 256;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "image-statistics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this
+    private BufferedImage image;
+    private int tilesX;
+    private int tilesY;
+    private int[][] tiles;
+    private boolean[] dirty;
+    private ImageStatistics cached;
+
+    @Override
+    public synchronized void imageChanged(BufferedImage image, Rectangle region) {
+        cached = null;
+        if (image == null) {
+            this.image = null;
+            tiles = null;
+            dirty = null;
+            return;
+        }
+        if (region == null || image != this.image) {
+            this.image = image;
+            tilesX = (image.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+            tilesY = (image.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+            tiles = new int[tilesX * tilesY][];
+            dirty = new boolean[tiles.length];
+            Arrays.fill(dirty, true);
+            return;
+        }
+
+        Rectangle bounds = region.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+        if (bounds.isEmpty()) {
+            return;
+        }
+        int tx0 = bounds.x / TILE_SIZE;
+        int ty0 = bounds.y / TILE_SIZE;
+        int tx1 = (bounds.x + bounds.width - 1) / TILE_SIZE;
+        int ty1 = (bounds.y + bounds.height - 1) / TILE_SIZE;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                dirty[ty * tilesX + tx] = true;
+            }
+        }
+    }
+
+    /**
+     * Get the statistics of the current image if they are up to date, or
+     * null.
+     */
+    public synchronized ImageStatistics getCached() {
+        return cached;
+    }
+
+    /**
+     * Compute the statistics of the current image in the background. The
+     * callback runs on the statistics thread and receives null if there is
+     * no image.
+     */
+    public void compute(Consumer<ImageStatistics> callback) {
+        executor.execute(() -> callback.accept(computeNow()));
+    }
+
+    private ImageStatistics computeNow() {
+        BufferedImage source;
+        int[][] results;
+        int[] pending;
+        int columns;
+        synchronized (this) {
+            if (cached != null || image == null) {
+                return cached;
+            }
+            source = image;
+            results = tiles;
+            columns = tilesX;
+            pending = IntStream.range(0, dirty.length).filter(i -> dirty[i]).toArray();
+            // Tiles modified from here on are marked dirty again
+            for (int i : pending) {
+                dirty[i] = false;
+            }
+        }
+
+        int[][] computed = new int[results.length][];
+        IntStream.of(pending).parallel().forEach(i -> computed[i] = countTile(source, i % columns, i / columns));
+
+        int[][] histograms = new int[4][256];
+        boolean complete = true;
+        synchronized (this) {
+            if (source != image || results != tiles) {
+                // The image was replaced meanwhile; a newer request follows
+                return null;
+            }
+            for (int i : pending) {
+                tiles[i] = computed[i];
+            }
+            for (int i = 0; i < tiles.length; i++) {
+                complete &= !dirty[i];
+                int[] tile = tiles[i];
+                for (int bin = 0; bin < BINS; bin++) {
+                    histograms[bin >> 8][bin & 0xFF] += tile[bin];
+                }
+            }
+            ImageStatistics statistics = new ImageStatistics(histograms,
+                    (long) source.getWidth() * source.getHeight());
+            if (complete) {
+                cached = statistics;
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * Count the pixels of one tile into a fresh partial histogram.
+     */
+    private static int[] countTile(BufferedImage image, int tx, int ty) {
+        int x0 = tx * TILE_SIZE;
+        int y0 = ty * TILE_SIZE;
+        int w = Math.min(TILE_SIZE, image.getWidth() - x0);
+        int h = Math.min(TILE_SIZE, image.getHeight() - y0);
+        int[] counts = new int[BINS];
+
+        PackedRaster raster = PackedRaster.of(image);
+        int[] row = raster == null ? new int[w] : null;
+        for (int y = y0; y < y0 + h; y++) {
+            int[] pixels;
+            int off;
+            if (raster != null) {
+                pixels = raster.data;
+                off = raster.rowOffset(y) + x0;
+            } else {
+                image.getRGB(x0, y, w, 1, row, 0, w);
+                pixels = row;
+                off = 0;
+            }
+            for (int i = off; i < off + w; i++) {
+                int p = pixels[i];
+                int r = (p >> 16) & 0xFF;
+                int g = (p >> 8) & 0xFF;
+                int b = p & 0xFF;
+                counts[r]++;
+                counts[256 + g]++;
+                counts[512 + b]++;
+                // Rec. 601 luma in fixed point
+                counts[768 + ((r * 77 + g * 150 + b * 29) >> 8)]++;
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,153 @@
+package com.photoviewer.image;
+
+/**
+ * Immutable set of tone adjustment parameters: levels (black point, white
+ * point and gamma), brightness, contrast and a tone curve. The same
+ * mapping is applied to the red, green and blue channels; alpha is kept.
+ * Compile with {@link ColorLut#of(ToneAdjustment)} to apply it to pixels.
+ */
+public final class ToneAdjustment {
+    private static final ToneAdjustment IDENTITY = new ToneAdjustment(0, 0, 0, 255, 1.0,
+            new int[] { 0, 255 }, new int[] { 0, 255 });
+
+    private final double brightness;
+    private final double contrast;
+    private final int blackPoint;
+    private final int whitePoint;
+    private final double gamma;
+    private final int[] curveX;
+    private final int[] curveY;
+
+    private ToneAdjustment(double brightness, double contrast, int blackPoint, int whitePoint, double gamma,
+            int[] curveX, int[] curveY) {
+        this.brightness = brightness;
+        this.contrast = contrast;
+        this.blackPoint = blackPoint;
+        this.whitePoint = whitePoint;
+        this.gamma = gamma;
+        this.curveX = curveX;
+        this.curveY = curveY;
+    }
+
+    /**
+     * Parameters that leave the image unchanged.
+     */
+    public static ToneAdjustment identity() {
+        return IDENTITY;
+    }
+
+    /**
+     * Brightness offset from -100 to 100.
+     */
+    public ToneAdjustment withBrightness(double brightness) {
+        return new ToneAdjustment(brightness, contrast, blackPoint, whitePoint, gamma, curveX, curveY);
+    }
+
+    /**
+     * Contrast from -100 to 100.
+     */
+    public ToneAdjustment withContrast(double contrast) {
+        return new ToneAdjustment(brightness, contrast, blackPoint, whitePoint, gamma, curveX, curveY);
+    }
+
+    /**
+     * Input levels: values at or below the black point become 0, values at
+     * or above the white point become 255, and gamma bends the midtones.
+     */
+    public ToneAdjustment withLevels(int blackPoint, int whitePoint, double gamma) {
+        int black = Math.max(0, Math.min(254, blackPoint));
+        int white = Math.max(black + 1, Math.min(255, whitePoint));
+        return new ToneAdjustment(brightness, contrast, black, white, Math.max(0.01, gamma), curveX, curveY);
+    }
+
+    /**
+     * Tone curve through the given control points (input 0-255 to output
+     * 0-255), sorted by input. The end points 0 and 255 are added if
+     * missing.
+     */
+    public ToneAdjustment withCurve(int[] inputs, int[] outputs) {
+        int n = inputs.length;
+        boolean addStart = n == 0 || inputs[0] > 0;
+        boolean addEnd = n == 0 || inputs[n - 1] < 255;
+        int size = n + (addStart ? 1 : 0) + (addEnd ? 1 : 0);
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        int i = 0;
+        if (addStart) {
+            xs[i] = 0;
+            ys[i++] = 0;
+        }
+        for (int k = 0; k < n; k++, i++) {
+            xs[i] = inputs[k];
+            ys[i] = outputs[k];
+        }
+        if (addEnd) {
+            xs[i] = 255;
+            ys[i] = 255;
+        }
+        return new ToneAdjustment(brightness, contrast, blackPoint, whitePoint, gamma, xs, ys);
+    }
+
+    public double getBrightness() {
+        return brightness;
+    }
+
+    public double getContrast() {
+        return contrast;
+    }
+
+    public int getBlackPoint() {
+        return blackPoint;
+    }
+
+    public int getWhitePoint() {
+        return whitePoint;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public boolean isIdentity() {
+        for (int v = 0; v < 256; v++) {
+            if (map(v) != v) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map one 8-bit channel value through levels, brightness, contrast and
+     * the curve, in that order.
+     */
+    public int map(int value) {
+        double v = (value - blackPoint) / (double) (whitePoint - blackPoint);
+        v = Math.max(0, Math.min(1, v));
+        if (gamma != 1.0) {
+            v = Math.pow(v, 1.0 / gamma);
+        }
+
+        v += brightness / 200.0;
+        double factor = contrast >= 0 ? 1 + contrast / 25.0 : 1 + contrast / 100.0;
+        v = (v - 0.5) * factor + 0.5;
+
+        double out = curve(Math.max(0, Math.min(1, v)) * 255);
+        return (int) Math.max(0, Math.min(255, Math.round(out)));
+    }
+
+    /**
+     * Piecewise linear interpolation through the curve points.
+     */
+    private double curve(double x) {
+        for (int i = 1; i < curveX.length; i++) {
+            if (x <= curveX[i]) {
+                int x0 = curveX[i - 1];
+                int x1 = curveX[i];
+                double t = x1 == x0 ? 1 : (x - x0) / (x1 - x0);
+                return curveY[i - 1] + t * (curveY[i] - curveY[i - 1]);
+            }
+        }
+        return curveY[curveY.length - 1];
+    }
+}
@@ -0,0 +1,216 @@
+package com.photoviewer.image;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Pixel kernels using the incubating Vector API. Each ARGB lane is unpacked
+ * into four float vectors, processed, and packed again; the tail of every
+ * row that does not fill a whole vector is handled by the scalar code.
+ * Only instantiated when the jdk.incubator.vector module is present.
+ */
+public class VectorPixelKernels extends ScalarPixelKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    public VectorPixelKernels() {
+        if (INTS.length() != FLOATS.length() || INTS.length() < 4) {
+            throw new IllegalStateException("No usable vector shape: " + INTS);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + INTS.vectorBitSize();
+    }
+
+    @Override
+    public void compositeSrcOver(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        int i = 0;
+        int upper = INTS.loopBound(length);
+        for (; i < upper; i += INTS.length()) {
+            IntVector s = IntVector.fromArray(INTS, src, srcOff + i);
+            IntVector d = IntVector.fromArray(INTS, dst, dstOff + i);
+
+            FloatVector sa = channel(s, 24).mul(1f / 255f);
+            FloatVector da = channel(d, 24).mul(1f / 255f);
+            FloatVector dw = da.mul(sa.neg().add(1f));
+            FloatVector oa = sa.add(dw);
+            VectorMask<Float> empty = oa.compare(VectorOperators.EQ, 0f);
+            FloatVector inv = FloatVector.broadcast(FLOATS, 1f).div(oa.blend(1f, empty)).blend(0f, empty);
+
+            FloatVector r = channel(s, 16).mul(sa).add(channel(d, 16).mul(dw)).mul(inv);
+            FloatVector g = channel(s, 8).mul(sa).add(channel(d, 8).mul(dw)).mul(inv);
+            FloatVector b = channel(s, 0).mul(sa).add(channel(d, 0).mul(dw)).mul(inv);
+            keepExtremes(s, d, pack(oa.mul(255f), r, g, b)).intoArray(dst, dstOff + i);
+        }
+        super.compositeSrcOver(src, srcOff + i, dst, dstOff + i, length - i);
+    }
+
+    @Override
+    public void compositeSrcOverOpaque(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        int i = 0;
+        int upper = INTS.loopBound(length);
+        for (; i < upper; i += INTS.length()) {
+            IntVector s = IntVector.fromArray(INTS, src, srcOff + i);
+            IntVector d = IntVector.fromArray(INTS, dst, dstOff + i);
+
+            FloatVector a = channel(s, 24).mul(1f / 255f);
+            FloatVector ia = a.neg().add(1f);
+            FloatVector r = channel(s, 16).mul(a).add(channel(d, 16).mul(ia));
+            FloatVector g = channel(s, 8).mul(a).add(channel(d, 8).mul(ia));
+            FloatVector b = channel(s, 0).mul(a).add(channel(d, 0).mul(ia));
+            keepExtremes(s, d, pack(FloatVector.broadcast(FLOATS, 255f), r, g, b)).intoArray(dst, dstOff + i);
+        }
+        super.compositeSrcOverOpaque(src, srcOff + i, dst, dstOff + i, length - i);
+    }
+
+    @Override
+    public void premultiply(int[] pixels, int off, int length) {
+        int i = 0;
+        int upper = INTS.loopBound(length);
+        for (; i < upper; i += INTS.length()) {
+            IntVector p = IntVector.fromArray(INTS, pixels, off + i);
+            FloatVector a = channel(p, 24);
+            FloatVector f = a.mul(1f / 255f);
+            pack(a, channel(p, 16).mul(f), channel(p, 8).mul(f), channel(p, 0).mul(f))
+                    .intoArray(pixels, off + i);
+        }
+        super.premultiply(pixels, off + i, length - i);
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels, int off, int length) {
+        int i = 0;
+        int upper = INTS.loopBound(length);
+        for (; i < upper; i += INTS.length()) {
+            IntVector p = IntVector.fromArray(INTS, pixels, off + i);
+            FloatVector a = channel(p, 24);
+            VectorMask<Float> transparent = a.compare(VectorOperators.EQ, 0f);
+            FloatVector f = FloatVector.broadcast(FLOATS, 255f).div(a.blend(1f, transparent)).blend(0f, transparent);
+            pack(a, channel(p, 16).mul(f), channel(p, 8).mul(f), channel(p, 0).mul(f))
+                    .intoArray(pixels, off + i);
+        }
+        super.unpremultiply(pixels, off + i, length - i);
+    }
+
+    @Override
+    public void rgbToArgb(int[] src, int srcOff, int[] dst, int dstOff, int length) {
+        int i = 0;
+        int upper = INTS.loopBound(length);
+        for (; i < upper; i += INTS.length()) {
+            IntVector.fromArray(INTS, src, srcOff + i).or(0xFF000000).intoArray(dst, dstOff + i);
+        }
+        super.rgbToArgb(src, srcOff + i, dst, dstOff + i, length - i);
+    }
+
+    @Override
+    public void convolveHorizontal(int[] src, int srcOff, int[] dst, int dstOff, int length, float[] kernel) {
+        int radius = kernel.length / 2;
+        int lanes = INTS.length();
+        // Vectorize the interior, where no tap needs clamping
+        int start = Math.min(radius, length);
+        int end = Math.max(start, length - radius);
+        int x = start;
+        for (; x + lanes <= end; x += lanes) {
+            FloatVector a = FloatVector.zero(FLOATS);
+            FloatVector r = a, g = a, b = a;
+            for (int k = 0; k < kernel.length; k++) {
+                IntVector p = IntVector.fromArray(INTS, src, srcOff + x + k - radius);
+                FloatVector w = FloatVector.broadcast(FLOATS, kernel[k]);
+                a = channel(p, 24).fma(w, a);
+                r = channel(p, 16).fma(w, r);
+                g = channel(p, 8).fma(w, g);
+                b = channel(p, 0).fma(w, b);
+            }
+            pack(a, r, g, b).intoArray(dst, dstOff + x);
+        }
+        convolveHorizontalRange(src, srcOff, dst, dstOff, length, kernel, 0, start);
+        convolveHorizontalRange(src, srcOff, dst, dstOff, length, kernel, x, length);
+    }
+
+    private static void convolveHorizontalRange(int[] src, int srcOff, int[] dst, int dstOff, int length,
+            float[] kernel, int from, int to) {
+        int radius = kernel.length / 2;
+        for (int x = from; x < to; x++) {
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0; k < kernel.length; k++) {
+                int p = src[srcOff + Math.max(0, Math.min(length - 1, x + k - radius))];
+                float w = kernel[k];
+                a += (p >>> 24) * w;
+                r += ((p >> 16) & 0xFF) * w;
+                g += ((p >> 8) & 0xFF) * w;
+                b += (p & 0xFF) * w;
+            }
+            dst[dstOff + x] = ScalarPixelKernels.pack(a, r, g, b);
+        }
+    }
+
+    @Override
+    public void convolveVertical(int[][] rows, int[] rowOffsets, int[] dst, int dstOff, int length,
+            float[] kernel) {
+        int x = 0;
+        int upper = INTS.loopBound(length);
+        for (; x < upper; x += INTS.length()) {
+            FloatVector a = FloatVector.zero(FLOATS);
+            FloatVector r = a, g = a, b = a;
+            for (int k = 0; k < kernel.length; k++) {
+                IntVector p = IntVector.fromArray(INTS, rows[k], rowOffsets[k] + x);
+                FloatVector w = FloatVector.broadcast(FLOATS, kernel[k]);
+                a = channel(p, 24).fma(w, a);
+                r = channel(p, 16).fma(w, r);
+                g = channel(p, 8).fma(w, g);
+                b = channel(p, 0).fma(w, b);
+            }
+            pack(a, r, g, b).intoArray(dst, dstOff + x);
+        }
+        for (; x < length; x++) {
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0; k < kernel.length; k++) {
+                int p = rows[k][rowOffsets[k] + x];
+                float w = kernel[k];
+                a += (p >>> 24) * w;
+                r += ((p >> 16) & 0xFF) * w;
+                g += ((p >> 8) & 0xFF) * w;
+                b += (p & 0xFF) * w;
+            }
+            dst[dstOff + x] = ScalarPixelKernels.pack(a, r, g, b);
+        }
+    }
+
+    /**
+     * Leave the destination where the source is fully transparent and take
+     * the source where it is opaque, as the scalar kernels do.
+     */
+    private static IntVector keepExtremes(IntVector s, IntVector d, IntVector blended) {
+        IntVector alpha = s.lanewise(VectorOperators.LSHR, 24);
+        return blended.blend(d, alpha.compare(VectorOperators.EQ, 0))
+                .blend(s, alpha.compare(VectorOperators.EQ, 255));
+    }
+
+    /**
+     * Extract one 8-bit channel of packed pixels as floats.
+     */
+    private static FloatVector channel(IntVector pixels, int shift) {
+        IntVector c = shift == 0 ? pixels.and(0xFF) : pixels.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        return (FloatVector) c.convert(VectorOperators.I2F, 0);
+    }
+
+    /**
+     * Round, clamp and pack float channels into ARGB pixels.
+     */
+    private static IntVector pack(FloatVector a, FloatVector r, FloatVector g, FloatVector b) {
+        return toByte(a).lanewise(VectorOperators.LSHL, 24)
+                .or(toByte(r).lanewise(VectorOperators.LSHL, 16))
+                .or(toByte(g).lanewise(VectorOperators.LSHL, 8))
+                .or(toByte(b));
+    }
+
+    private static IntVector toByte(FloatVector v) {
+        IntVector i = (IntVector) v.add(0.5f).convert(VectorOperators.F2I, 0);
+        return i.max(0).min(255);
+    }
+}
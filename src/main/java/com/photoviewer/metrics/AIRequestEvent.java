@@ -0,0 +1,42 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * One round trip to an AI provider, including encoding the attached image.
+ * The prompt and response themselves are not recorded.
+ */
+@Name("com.photoviewer.AIRequest")
+@Label("AI Request")
+@Description("Round trip to an AI provider, with the size of the attached image")
+@Category({ "Photo Viewer", "AI" })
+public class AIRequestEvent extends ImageEvent {
+    @Label("Provider")
+    String provider;
+
+    @Label("Prompt Length")
+    int promptLength;
+
+    @Label("Response Length")
+    int responseLength;
+
+    @Label("Failed")
+    boolean failed;
+
+    public void complete(String provider, String prompt, BufferedImage image, String response, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            this.provider = provider;
+            this.promptLength = prompt.length();
+            this.responseLength = response != null ? response.length() : 0;
+            this.failed = failed;
+            setImage(image);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * One repaint of the main image canvas.
+ */
+@Name("com.photoviewer.CanvasRepaint")
+@Label("Canvas Repaint")
+@Description("Repaint of the image canvas on the JavaFX application thread")
+public class CanvasRepaintEvent extends ImageEvent {
+    @Label("Zoom")
+    double zoom;
+
+    @Label("Canvas Width")
+    int canvasWidth;
+
+    @Label("Canvas Height")
+    int canvasHeight;
+
+    public void complete(BufferedImage image, double zoom, double canvasWidth, double canvasHeight) {
+        end();
+        if (shouldCommit()) {
+            setImage(image);
+            this.zoom = zoom;
+            this.canvasWidth = (int) canvasWidth;
+            this.canvasHeight = (int) canvasHeight;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flight recording started from within the application, with the JDK's
+ * default settings plus the bundled {@value #SETTINGS} profile for the
+ * image pipeline events.
+ * <p>
+ * The profile can also be used for a recording started at launch:
+ * {@code -XX:StartFlightRecording:settings=default,photoviewer.jfc}, with
+ * the file extracted from the jar.
+ */
+public class FlightRecording {
+    public static final String SETTINGS = "/photoviewer.jfc";
+
+    private static final FlightRecording INSTANCE = new FlightRecording();
+
+    private Recording recording;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Get the recording of the application.
+     */
+    public static FlightRecording get() {
+        return INSTANCE;
+    }
+
+    public synchronized boolean isRunning() {
+        return recording != null;
+    }
+
+    /**
+     * Start recording, if not already.
+     */
+    public synchronized void start() throws IOException {
+        if (recording != null) {
+            return;
+        }
+        Map<String, String> settings;
+        try (InputStream in = FlightRecording.class.getResourceAsStream(SETTINGS)) {
+            if (in == null) {
+                throw new IOException("Recording settings " + SETTINGS + " are missing");
+            }
+            settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8)).getSettings());
+        } catch (ParseException e) {
+            throw new IOException("Invalid recording settings: " + e.getMessage(), e);
+        }
+        Recording started = new Recording(settings);
+        started.setName("Photo Viewer");
+        started.setToDisk(true);
+        started.start();
+        recording = started;
+    }
+
+    /**
+     * Stop recording and write what was recorded to a file.
+     *
+     * @param file The .jfr file to write, or null to discard the recording
+     */
+    public synchronized void stop(File file) throws IOException {
+        if (recording == null) {
+            return;
+        }
+        Recording stopped = recording;
+        recording = null;
+        try {
+            stopped.stop();
+            if (file != null) {
+                stopped.dump(file.toPath());
+            }
+        } finally {
+            stopped.close();
+        }
+    }
+}
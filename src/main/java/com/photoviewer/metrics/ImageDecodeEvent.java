@@ -0,0 +1,44 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * One decoder's attempt at a file. Attempts by decoders that fail or
+ * decline are recorded too, with no image.
+ */
+@Name("com.photoviewer.ImageDecode")
+@Label("Image Decode")
+@Description("Decoding of an image file by one decoder")
+public class ImageDecodeEvent extends ImageEvent {
+    @Label("Path")
+    String path;
+
+    @Label("Decoder")
+    String decoder;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Target Size")
+    @Description("Size the smaller side was reduced to, or 0 for full size")
+    int targetSize;
+
+    public void complete(File file, String decoder, int targetSize, BufferedImage image) {
+        end();
+        if (shouldCommit()) {
+            this.path = file.getPath();
+            this.decoder = decoder;
+            this.fileSize = file.length();
+            this.targetSize = targetSize;
+            setImage(image);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Saving of the current image to a file.
+ */
+@Name("com.photoviewer.ImageEncode")
+@Label("Image Encode")
+@Description("Saving of an image to a file, re-encoded or with its compressed data copied")
+public class ImageEncodeEvent extends ImageEvent {
+    @Label("Path")
+    String path;
+
+    @Label("Format")
+    String format;
+
+    @Label("Lossless")
+    @Description("Whether the compressed data was copied instead of encoding the pixels again")
+    boolean lossless;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    public void complete(File file, String format, boolean lossless, BufferedImage image) {
+        end();
+        if (shouldCommit()) {
+            this.path = file.getPath();
+            this.format = format;
+            this.lossless = lossless;
+            this.fileSize = file.length();
+            setImage(image);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.photoviewer.metrics;
+
+import com.photoviewer.image.MemoryGovernor;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Base of the Flight Recorder events of the image pipeline, with the size
+ * of the image involved. Fields are only filled in once the event is known
+ * to be recorded, so the events cost next to nothing while no recording is
+ * running.
+ */
+@Category({ "Photo Viewer", "Image Pipeline" })
+@StackTrace(false)
+abstract class ImageEvent extends Event {
+    @Label("Image Width")
+    int imageWidth;
+
+    @Label("Image Height")
+    int imageHeight;
+
+    @Label("Image Bytes")
+    @DataAmount
+    long imageBytes;
+
+    void setImage(BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        imageWidth = image.getWidth();
+        imageHeight = image.getHeight();
+        imageBytes = MemoryGovernor.bytesOf(image);
+    }
+}
@@ -0,0 +1,60 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+/**
+ * One {@code ImageOperations} call on the current image, such as a resize,
+ * crop or paste, or the orientation applied to pixels leaving the viewer.
+ * Copies for the undo history are recorded as {@link UndoSnapshotEvent}s
+ * instead, and the scaled copies behind adjustment previews not at all.
+ */
+@Name("com.photoviewer.ImageOperation")
+@Label("Image Operation")
+@Description("Resize, crop, copy, composite or rotation of an image")
+public class ImageOperationEvent extends ImageEvent {
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Run an operation, recording it as an event.
+     *
+     * @param image The source image of the operation
+     */
+    public static <T> T time(String operation, BufferedImage image, Supplier<T> body) {
+        ImageOperationEvent event = new ImageOperationEvent();
+        event.begin();
+        try {
+            return body.get();
+        } finally {
+            event.complete(operation, image);
+        }
+    }
+
+    /**
+     * Run an operation that changes the image in place, recording it as an
+     * event.
+     */
+    public static void time(String operation, BufferedImage image, Runnable body) {
+        ImageOperationEvent event = new ImageOperationEvent();
+        event.begin();
+        try {
+            body.run();
+        } finally {
+            event.complete(operation, image);
+        }
+    }
+
+    private void complete(String operation, BufferedImage image) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            setImage(image);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.photoviewer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with a bounded relative error, in the style of
+ * HdrHistogram: each power of two of nanoseconds is split into
+ * {@value #SUB_BUCKETS} linear buckets, so any recorded value is known to
+ * within about 3%, from one nanosecond up to several minutes, in a fixed
+ * array of counts.
+ * <p>
+ * Recording is lock-free and allocation-free, so it can be called on hot
+ * paths from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^40 ns (about 18 minutes) and more share the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int OVERFLOW = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(OVERFLOW + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record one duration.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Retry until the larger value is stored
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / (double) n / 1_000_000.0;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Get the duration in milliseconds below which the given percentile
+     * (0-100) of the recorded values fall.
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(n * Math.max(0, Math.min(percentile, 100)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                // Never report more than the largest value seen
+                return Math.min(upperBound(i), maxNanos.get()) / 1_000_000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Get the number of values that took the given number of milliseconds
+     * or longer, e.g. frames over budget.
+     */
+    public long getCountOver(double millis) {
+        long threshold = (long) (millis * 1_000_000);
+        long over = 0;
+        for (int i = bucketOf(threshold); i < buckets.length(); i++) {
+            over += buckets.get(i);
+        }
+        return over;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Values below {@code SUB_BUCKETS} get a bucket each; above that, the
+     * top {@code SUB_BUCKET_BITS} bits after the leading one pick the bucket
+     * within the value's power of two.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        if (nanos >= 1L << MAX_EXPONENT) {
+            return OVERFLOW;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (nanos >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == OVERFLOW) {
+            return Long.MAX_VALUE;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", getCount(),
+                getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99),
+                getMaxMillis());
+    }
+}
@@ -0,0 +1,240 @@
+package com.photoviewer.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named timers and counters for the application's hot paths: decoding,
+ * conversion to JavaFX images, canvas rendering, saving and AI requests.
+ * <p>
+ * A timer records the duration of each sample in a {@link LatencyHistogram}
+ * and, where the JVM supports it, the bytes the sampling thread allocated
+ * meanwhile. The figures can be read from the on-screen overlay, over JMX
+ * as {@value #OBJECT_NAME}, or exported as JSON.
+ */
+public class Metrics {
+    public static final String OBJECT_NAME = "com.photoviewer:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final com.sun.management.ThreadMXBean allocations;
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Durations and allocations of one kind of operation.
+     */
+    public static class Timer {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder allocatedBytes = new LongAdder();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+    }
+
+    /**
+     * One timed operation in progress; stop it on the thread that started
+     * it, usually in a finally block.
+     */
+    public final class Sample {
+        private final Timer timer;
+        private final long start;
+        private final long allocatedAtStart;
+
+        Sample(Timer timer) {
+            this.timer = timer;
+            this.allocatedAtStart = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        public void stop() {
+            timer.latency.record(System.nanoTime() - start);
+            if (allocatedAtStart >= 0) {
+                timer.allocatedBytes.add(Math.max(0, allocatedBytes() - allocatedAtStart));
+            }
+        }
+    }
+
+    private Metrics() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean hotspot = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) {
+                hotspot = null;
+            }
+        }
+        allocations = hotspot;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(this),
+                    new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            System.err.println("Could not register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the metrics of the application.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start timing an operation.
+     */
+    public Sample start(String timer) {
+        return new Sample(timer(timer));
+    }
+
+    public Sample start(Timer timer) {
+        return new Sample(timer);
+    }
+
+    /**
+     * Get a timer, creating it on first use.
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Add to a counter, e.g. of bytes read.
+     */
+    public void count(String counter, long amount) {
+        counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+    }
+
+    public void reset() {
+        for (Timer timer : timers.values()) {
+            timer.latency.reset();
+            timer.allocatedBytes.reset();
+        }
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Get a copy of all figures, ordered by name.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.startedAt = startedAt;
+        snapshot.takenAt = System.currentTimeMillis();
+        Map<String, Timer> sorted = new TreeMap<>(timers);
+        for (Timer timer : sorted.values()) {
+            snapshot.timers.add(new TimerSnapshot(timer));
+        }
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            snapshot.counters.put(counter.getKey(), counter.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write a snapshot as JSON, e.g. to compare runs for regressions.
+     */
+    public void exportJson(File file) throws IOException {
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, snapshot());
+    }
+
+    String toJson() throws IOException {
+        return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(snapshot());
+    }
+
+    private long allocatedBytes() {
+        return allocations != null ? allocations.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * All figures at one point in time.
+     */
+    public static class Snapshot {
+        public long startedAt;
+        public long takenAt;
+        public List<TimerSnapshot> timers = new ArrayList<>();
+        public Map<String, Long> counters = new TreeMap<>();
+    }
+
+    /**
+     * Figures of one timer.
+     */
+    public static class TimerSnapshot {
+        private final String name;
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final long allocatedBytes;
+
+        TimerSnapshot(Timer timer) {
+            LatencyHistogram latency = timer.latency;
+            this.name = timer.name;
+            this.count = latency.getCount();
+            this.meanMillis = latency.getMeanMillis();
+            this.p50Millis = latency.getPercentileMillis(50);
+            this.p95Millis = latency.getPercentileMillis(95);
+            this.p99Millis = latency.getPercentileMillis(99);
+            this.maxMillis = latency.getMaxMillis();
+            this.allocatedBytes = timer.getAllocatedBytes();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
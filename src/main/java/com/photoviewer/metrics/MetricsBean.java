@@ -0,0 +1,41 @@
+package com.photoviewer.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registered with the platform MBean server by {@link Metrics}.
+ */
+class MetricsBean implements MetricsMXBean {
+    private final Metrics metrics;
+
+    MetricsBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<Metrics.TimerSnapshot> getTimers() {
+        return metrics.snapshot().timers;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return metrics.snapshot().counters;
+    }
+
+    @Override
+    public String exportJson() {
+        try {
+            return metrics.toJson();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        metrics.reset();
+    }
+}
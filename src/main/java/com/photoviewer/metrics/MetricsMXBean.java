@@ -0,0 +1,20 @@
+package com.photoviewer.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the application {@link Metrics}.
+ */
+public interface MetricsMXBean {
+    List<Metrics.TimerSnapshot> getTimers();
+
+    Map<String, Long> getCounters();
+
+    /**
+     * Get all figures as JSON.
+     */
+    String exportJson();
+
+    void reset();
+}
@@ -0,0 +1,23 @@
+package com.photoviewer.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Copy of the current image taken before an edit, for undo.
+ */
+@Name("com.photoviewer.UndoSnapshot")
+@Label("Undo Snapshot")
+@Description("Copy of the image taken for the undo history")
+public class UndoSnapshotEvent extends ImageEvent {
+    public void complete(BufferedImage image) {
+        end();
+        if (shouldCommit()) {
+            setImage(image);
+            commit();
+        }
+    }
+}
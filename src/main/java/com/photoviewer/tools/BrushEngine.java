@@ -0,0 +1,197 @@
+package com.photoviewer.tools;
+
+import com.photoviewer.image.DrawingLayer;
+
+/**
+ * Rasterizes smoothed brush strokes directly into a drawing layer.
+ * Pointer samples are joined with Catmull-Rom splines and the curve is
+ * stamped with anti-aliased round dabs at sub-pixel positions, writing
+ * straight into the layer's int[] tiles without going through Java2D.
+ */
+public class BrushEngine {
+    // Ignore samples closer than this to the previous one (in image pixels)
+    private static final double MIN_SAMPLE_DISTANCE = 0.5;
+    // Length of the straight pieces used to walk along a spline segment
+    private static final double CURVE_STEP = 0.5;
+
+    // Last four accepted samples, oldest first
+    private final double[] px = new double[4];
+    private final double[] py = new double[4];
+    private int sampleCount;
+
+    private DrawingLayer layer;
+
+    private int rgb;
+    private int alpha;
+    private double radius;
+    private double spacing;
+    private double distanceSinceDab;
+
+    /**
+     * Start a new stroke at the given position and stamp the first dab.
+     *
+     * @return false if there is no layer to draw on
+     */
+    public boolean beginStroke(DrawingLayer layer, int argb, double diameter, double x, double y) {
+        if (layer == null) {
+            return false;
+        }
+        this.layer = layer;
+
+        rgb = argb & 0xFFFFFF;
+        alpha = argb >>> 24;
+        radius = diameter / 2.0;
+        // Overlapping dabs blend by maximum coverage, so a quarter of the
+        // diameter is dense enough to look continuous
+        spacing = Math.max(0.5, diameter * 0.25);
+
+        px[3] = x;
+        py[3] = y;
+        sampleCount = 1;
+        distanceSinceDab = 0;
+        stampDab(x, y);
+        return true;
+    }
+
+    /**
+     * Add the next pointer sample. The curve is drawn up to the previous
+     * sample, since a spline segment needs one point of look-ahead.
+     */
+    public void strokeTo(double x, double y) {
+        if (layer == null) {
+            return;
+        }
+        double dx = x - px[3];
+        double dy = y - py[3];
+        if (dx * dx + dy * dy < MIN_SAMPLE_DISTANCE * MIN_SAMPLE_DISTANCE) {
+            return;
+        }
+
+        shift(x, y);
+        if (sampleCount >= 3) {
+            // Segment between the two middle points; the first segment of a
+            // stroke reuses its start point as the leading control point
+            int first = sampleCount == 3 ? 1 : 0;
+            drawSegment(px[first], py[first], px[1], py[1], px[2], py[2], px[3], py[3]);
+        }
+    }
+
+    /**
+     * Finish the stroke, drawing the last pending segment.
+     */
+    public void endStroke() {
+        if (layer == null) {
+            return;
+        }
+        if (sampleCount >= 2) {
+            int first = sampleCount == 2 ? 2 : 1;
+            drawSegment(px[first], py[first], px[2], py[2], px[3], py[3], px[3], py[3]);
+        }
+        layer = null;
+        sampleCount = 0;
+    }
+
+    /**
+     * Abandon the stroke without drawing anything further.
+     */
+    public void cancel() {
+        layer = null;
+        sampleCount = 0;
+    }
+
+    private void shift(double x, double y) {
+        for (int i = 0; i < 3; i++) {
+            px[i] = px[i + 1];
+            py[i] = py[i + 1];
+        }
+        px[3] = x;
+        py[3] = y;
+        sampleCount++;
+    }
+
+    /**
+     * Walk the uniform Catmull-Rom segment from (x1, y1) to (x2, y2) and stamp
+     * dabs at constant arc-length spacing.
+     */
+    private void drawSegment(double x0, double y0, double x1, double y1,
+            double x2, double y2, double x3, double y3) {
+        double chord = Math.hypot(x2 - x1, y2 - y1);
+        int steps = (int) Math.min(4096, Math.max(1, Math.ceil(chord / CURVE_STEP)));
+
+        double prevX = x1;
+        double prevY = y1;
+        for (int s = 1; s <= steps; s++) {
+            double t = s / (double) steps;
+            double t2 = t * t;
+            double t3 = t2 * t;
+            double x = 0.5 * (2 * x1 + (-x0 + x2) * t + (2 * x0 - 5 * x1 + 4 * x2 - x3) * t2
+                    + (-x0 + 3 * x1 - 3 * x2 + x3) * t3);
+            double y = 0.5 * (2 * y1 + (-y0 + y2) * t + (2 * y0 - 5 * y1 + 4 * y2 - y3) * t2
+                    + (-y0 + 3 * y1 - 3 * y2 + y3) * t3);
+            walkLine(prevX, prevY, x, y);
+            prevX = x;
+            prevY = y;
+        }
+    }
+
+    private void walkLine(double x0, double y0, double x1, double y1) {
+        double length = Math.hypot(x1 - x0, y1 - y0);
+        if (length == 0) {
+            return;
+        }
+        double d = spacing - distanceSinceDab;
+        while (d <= length) {
+            double t = d / length;
+            stampDab(x0 + (x1 - x0) * t, y0 + (y1 - y0) * t);
+            d += spacing;
+        }
+        distanceSinceDab = length - (d - spacing);
+    }
+
+    /**
+     * Stamp an anti-aliased round dab centred at a sub-pixel position. Pixel
+     * (i, j) covers [i, i + 1) x [j, j + 1), so its centre is at (i + 0.5, j + 0.5).
+     */
+    private void stampDab(double cx, double cy) {
+        int minX = Math.max(0, (int) Math.floor(cx - radius - 0.5));
+        int maxX = Math.min(layer.getWidth() - 1, (int) Math.ceil(cx + radius + 0.5));
+        int minY = Math.max(0, (int) Math.floor(cy - radius - 0.5));
+        int maxY = Math.min(layer.getHeight() - 1, (int) Math.ceil(cy + radius + 0.5));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+        double edge = radius + 0.5;
+        int size = DrawingLayer.TILE_SIZE;
+
+        // Visit each tile the dab overlaps and write the intersecting pixels
+        for (int ty = minY / size; ty <= maxY / size; ty++) {
+            int tileY = ty * size;
+            int y0 = Math.max(minY, tileY);
+            int y1 = Math.min(maxY, tileY + size - 1);
+            for (int tx = minX / size; tx <= maxX / size; tx++) {
+                int tileX = tx * size;
+                int x0 = Math.max(minX, tileX);
+                int x1 = Math.min(maxX, tileX + size - 1);
+                int[] tile = layer.getTileForWrite(tx, ty);
+
+                for (int y = y0; y <= y1; y++) {
+                    double dy = y + 0.5 - cy;
+                    int row = (y - tileY) * size - tileX;
+                    for (int x = x0; x <= x1; x++) {
+                        double dx = x + 0.5 - cx;
+                        double coverage = edge - Math.sqrt(dx * dx + dy * dy);
+                        if (coverage <= 0) {
+                            continue;
+                        }
+                        int a = coverage >= 1 ? alpha : (int) (alpha * coverage + 0.5);
+                        int existing = tile[row + x];
+                        // Keep the strongest coverage so overlapping dabs do not darken
+                        if (a > existing >>> 24) {
+                            tile[row + x] = (a << 24) | rgb;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
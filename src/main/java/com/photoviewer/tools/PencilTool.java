@@ -1,56 +1,61 @@
 package com.photoviewer.tools;
 
+import com.photoviewer.image.DrawingLayer;
 import com.photoviewer.ui.ImageCanvas;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-
 /**
  * Pencil tool for freehand drawing on the image.
  */
 public class PencilTool implements Tool {
     private final ImageCanvas canvas;
+    private final BrushEngine brush = new BrushEngine();
 
     private Color color = Color.RED;
     private double brushSize = 3.0;
 
-    private double lastX = -1;
-    private double lastY = -1;
     private boolean isDrawing = false;
 
+    // JavaFX copies of the layer tiles, refreshed only when a tile changes
+    private DrawingLayer displayedLayer;
+    private WritableImage[] tileImages;
+
     public PencilTool(ImageCanvas canvas) {
         this.canvas = canvas;
     }
 
     @Override
     public void onMousePressed(double x, double y) {
-        lastX = x;
-        lastY = y;
-        isDrawing = true;
-
-        // Draw a dot at the start point
-        drawOnLayer(x, y, x, y);
+        // Starting a stroke also draws a dot at the start point
+        isDrawing = brush.beginStroke(canvas.getDrawingLayer(), toArgb(color), brushSize, x, y);
     }
 
     @Override
     public void onMouseDragged(double x, double y) {
         if (isDrawing) {
-            drawOnLayer(lastX, lastY, x, y);
-            lastX = x;
-            lastY = y;
+            brush.strokeTo(x, y);
+        }
+    }
+
+    @Override
+    public void onMouseDragged(PointerBuffer samples) {
+        if (!isDrawing)
+            return;
+
+        for (int i = 0; i < samples.size(); i++) {
+            brush.strokeTo(samples.getX(i), samples.getY(i));
         }
     }
 
     @Override
     public void onMouseReleased(double x, double y) {
         if (isDrawing) {
-            drawOnLayer(lastX, lastY, x, y);
+            brush.strokeTo(x, y);
+            brush.endStroke();
             isDrawing = false;
-            lastX = -1;
-            lastY = -1;
 
             // Automatically save the drawing stroke to undo stack
             canvas.applyCurrentDrawing();
@@ -59,40 +64,48 @@ public class PencilTool implements Tool {
 
     @Override
     public void draw(GraphicsContext gc) {
-        // Draw the current drawing layer on top of the image
-        BufferedImage layer = canvas.getDrawingLayer();
-        if (layer != null) {
-            javafx.scene.image.Image fxImage = SwingFXUtils.toFXImage(layer, null);
-            gc.drawImage(fxImage, 0, 0);
+        // Draw the painted tiles of the drawing layer on top of the image
+        DrawingLayer layer = canvas.getDrawingLayer();
+        if (layer == null)
+            return;
+
+        if (layer != displayedLayer) {
+            displayedLayer = layer;
+            tileImages = new WritableImage[layer.getTilesX() * layer.getTilesY()];
+        }
+
+        int size = DrawingLayer.TILE_SIZE;
+        for (int ty = 0; ty < layer.getTilesY(); ty++) {
+            for (int tx = 0; tx < layer.getTilesX(); tx++) {
+                int[] tile = layer.getTile(tx, ty);
+                if (tile == null)
+                    continue;
+
+                int index = ty * layer.getTilesX() + tx;
+                if (layer.takeModified(tx, ty) || tileImages[index] == null) {
+                    if (tileImages[index] == null) {
+                        tileImages[index] = new WritableImage(size, size);
+                    }
+                    tileImages[index].getPixelWriter().setPixels(0, 0, size, size,
+                            PixelFormat.getIntArgbInstance(), tile, 0, size);
+                }
+                gc.drawImage(tileImages[index], tx * size, ty * size);
+            }
         }
     }
 
     @Override
     public void reset() {
+        brush.cancel();
         isDrawing = false;
-        lastX = -1;
-        lastY = -1;
     }
 
-    private void drawOnLayer(double x1, double y1, double x2, double y2) {
-        BufferedImage layer = canvas.getDrawingLayer();
-        if (layer == null)
-            return;
-
-        Graphics2D g = layer.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Convert JavaFX color to AWT color
-        java.awt.Color awtColor = new java.awt.Color(
-                (float) color.getRed(),
-                (float) color.getGreen(),
-                (float) color.getBlue(),
-                (float) color.getOpacity());
-
-        g.setColor(awtColor);
-        g.setStroke(new BasicStroke((float) brushSize, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g.drawLine((int) x1, (int) y1, (int) x2, (int) y2);
-        g.dispose();
+    private static int toArgb(Color color) {
+        int a = (int) Math.round(color.getOpacity() * 255);
+        int r = (int) Math.round(color.getRed() * 255);
+        int g = (int) Math.round(color.getGreen() * 255);
+        int b = (int) Math.round(color.getBlue() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
     }
 
     public void setColor(Color color) {
@@ -0,0 +1,47 @@
+package com.photoviewer.tools;
+
+/**
+ * Reusable buffer of pointer positions in image coordinates. High-frequency
+ * drag events are collected here and handed to the active tool once per
+ * frame, so the event path does not allocate per event.
+ */
+public class PointerBuffer {
+    private double[] coords = new double[128];
+    private int size = 0;
+
+    /**
+     * Append a sample. The backing array only grows when a single frame
+     * delivers more samples than ever before, so steady-state use is
+     * allocation-free.
+     */
+    public void add(double x, double y) {
+        if (size * 2 == coords.length) {
+            double[] grown = new double[coords.length * 2];
+            System.arraycopy(coords, 0, grown, 0, coords.length);
+            coords = grown;
+        }
+        coords[size * 2] = x;
+        coords[size * 2 + 1] = y;
+        size++;
+    }
+
+    public double getX(int index) {
+        return coords[index * 2];
+    }
+
+    public double getY(int index) {
+        return coords[index * 2 + 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
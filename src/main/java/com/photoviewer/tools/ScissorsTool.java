@@ -2,7 +2,12 @@ package com.photoviewer.tools;
 
 import com.photoviewer.image.ImageManager;
 import com.photoviewer.image.ImageOperations;
+import com.photoviewer.image.Orientation;
+import com.photoviewer.image.Selection;
+import com.photoviewer.metrics.ImageOperationEvent;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
@@ -11,8 +16,8 @@ import javafx.embed.swing.SwingFXUtils;
 import java.awt.image.BufferedImage;
 
 /**
- * Scissors tool for selecting image regions and copying them to the system
- * clipboard.
+ * Scissors tool for selecting image regions, dragging them to a new position
+ * and copying them to the system clipboard.
  */
 public class ScissorsTool implements Tool {
     private final ImageManager imageManager;
@@ -20,7 +25,11 @@ public class ScissorsTool implements Tool {
     private double startX, startY;
     private double endX, endY;
     private boolean isSelecting = false;
-    private boolean hasSelection = false;
+
+    // Current selection and the state of an ongoing move
+    private Selection selection;
+    private boolean isMoving = false;
+    private int moveStartOffsetX, moveStartOffsetY;
 
     public ScissorsTool(ImageManager imageManager) {
         this.imageManager = imageManager;
@@ -32,74 +41,135 @@ public class ScissorsTool implements Tool {
         startY = y;
         endX = x;
         endY = y;
-        isSelecting = true;
-        hasSelection = false;
+
+        if (getValidSelection() != null && selection.containsTarget(x, y)) {
+            // Grab the existing selection to move it
+            isMoving = true;
+            moveStartOffsetX = selection.getOffsetX();
+            moveStartOffsetY = selection.getOffsetY();
+        } else {
+            isSelecting = true;
+            selection = null;
+        }
     }
 
     @Override
     public void onMouseDragged(double x, double y) {
-        if (isSelecting) {
-            endX = x;
-            endY = y;
+        endX = x;
+        endY = y;
+        if (isMoving) {
+            selection.setOffset(moveStartOffsetX + (int) Math.round(x - startX),
+                    moveStartOffsetY + (int) Math.round(y - startY));
         }
     }
 
     @Override
     public void onMouseReleased(double x, double y) {
+        onMouseDragged(x, y);
         if (isSelecting) {
-            endX = x;
-            endY = y;
-            isSelecting = false;
-            hasSelection = true;
+            BufferedImage image = imageManager.getCurrentImage();
+            if (image != null) {
+                selection = Selection.fromCorners(startX, startY, endX, endY, image.getWidth(), image.getHeight());
+            }
         }
+        isSelecting = false;
+        isMoving = false;
     }
 
     @Override
     public void draw(GraphicsContext gc) {
-        if (isSelecting || hasSelection) {
-            double x = Math.min(startX, endX);
-            double y = Math.min(startY, endY);
-            double width = Math.abs(endX - startX);
-            double height = Math.abs(endY - startY);
-
-            gc.setStroke(Color.ORANGE);
-            gc.setLineWidth(2.0);
-            gc.setLineDashes(5, 5);
-            gc.strokeRect(x, y, width, height);
-            gc.setLineDashes(null);
+        if (isSelecting) {
+            strokeSelection(gc, Math.min(startX, endX), Math.min(startY, endY),
+                    Math.abs(endX - startX), Math.abs(endY - startY));
+            return;
         }
+
+        Selection current = getValidSelection();
+        if (current == null)
+            return;
+
+        if (current.isMoved()) {
+            // Preview straight from the cached full image, no pixels are copied
+            Image image = imageManager.getCurrentImageFX();
+            gc.drawImage(image,
+                    current.getX(), current.getY(), current.getWidth(), current.getHeight(),
+                    current.getTargetX(), current.getTargetY(), current.getWidth(), current.getHeight());
+        }
+        strokeSelection(gc, current.getTargetX(), current.getTargetY(), current.getWidth(), current.getHeight());
+    }
+
+    private void strokeSelection(GraphicsContext gc, double x, double y, double width, double height) {
+        gc.setStroke(Color.ORANGE);
+        gc.setLineWidth(2.0);
+        gc.setLineDashes(5, 5);
+        gc.strokeRect(x, y, width, height);
+        gc.setLineDashes(null);
     }
 
     @Override
     public void reset() {
         isSelecting = false;
-        hasSelection = false;
+        isMoving = false;
+        selection = null;
     }
 
     /**
-     * Copy the selected region to the system clipboard.
+     * Get the selection if it still fits the current image.
+     */
+    private Selection getValidSelection() {
+        BufferedImage image = imageManager.getCurrentImage();
+        if (selection != null && (image == null || !selection.fitsWithin(image.getWidth(), image.getHeight()))) {
+            selection = null;
+        }
+        return selection;
+    }
+
+    /**
+     * Commit a moved selection by copying its pixels to the new position.
+     * The selection then refers to the pasted pixels.
+     *
+     * @return true if the image was modified
+     */
+    public boolean pasteSelection() {
+        Selection current = getValidSelection();
+        if (current == null || !current.isMoved())
+            return false;
+
+        imageManager.pasteSelection(current);
+        BufferedImage image = imageManager.getCurrentImage();
+        selection = Selection.fromCorners(current.getTargetX(), current.getTargetY(),
+                current.getTargetX() + current.getWidth(), current.getTargetY() + current.getHeight(),
+                image.getWidth(), image.getHeight());
+        return true;
+    }
+
+    /**
+     * Copy the selected region to the system clipboard, turned the way it is
+     * displayed. The selection is in stored pixel coordinates, and
+     * orientations only flip and swap axes, so it covers exactly the
+     * displayed rectangle.
      */
     public void copyToSystemClipboard() {
-        if (hasSelection && imageManager.getCurrentImage() != null) {
-            int x = (int) Math.min(startX, endX);
-            int y = (int) Math.min(startY, endY);
-            int width = (int) Math.abs(endX - startX);
-            int height = (int) Math.abs(endY - startY);
-
-            if (width > 0 && height > 0) {
-                BufferedImage selection = ImageOperations.copyRegion(imageManager.getCurrentImage(), x, y, width,
-                        height);
-                if (selection != null) {
-                    Clipboard clipboard = Clipboard.getSystemClipboard();
-                    ClipboardContent content = new ClipboardContent();
-
-                    // Convert BufferedImage to JavaFX Image
-                    javafx.scene.image.Image fxImage = SwingFXUtils.toFXImage(selection, null);
-                    content.putImage(fxImage);
-
-                    clipboard.setContent(content);
-                }
-            }
+        Selection current = getValidSelection();
+        if (current == null)
+            return;
+
+        int orientation = imageManager.getOrientation();
+        Image fxImage;
+        if (orientation != Orientation.NORMAL) {
+            BufferedImage region = current.getView(imageManager.getCurrentImage());
+            fxImage = SwingFXUtils.toFXImage(ImageOperationEvent.time("applyOrientation", region,
+                    () -> ImageOperations.applyOrientation(region, orientation)), null);
+        } else if (imageManager.isImageFXReady()) {
+            // Copy the region straight out of the already converted image
+            fxImage = new WritableImage(imageManager.getCurrentImageFX().getPixelReader(),
+                    current.getX(), current.getY(), current.getWidth(), current.getHeight());
+        } else {
+            fxImage = SwingFXUtils.toFXImage(current.getView(imageManager.getCurrentImage()), null);
         }
+
+        ClipboardContent content = new ClipboardContent();
+        content.putImage(fxImage);
+        Clipboard.getSystemClipboard().setContent(content);
     }
 }
@@ -10,6 +10,16 @@ public interface Tool {
 
     void onMouseDragged(double x, double y);
 
+    /**
+     * Handle all drag samples collected since the last frame, in order.
+     * Tools that can process a whole batch at once should override this.
+     */
+    default void onMouseDragged(PointerBuffer samples) {
+        for (int i = 0; i < samples.size(); i++) {
+            onMouseDragged(samples.getX(i), samples.getY(i));
+        }
+    }
+
     void onMouseReleased(double x, double y);
 
     void draw(GraphicsContext gc);
@@ -5,6 +5,8 @@ import com.photoviewer.ai.OpenAIProvider;
 import com.photoviewer.ai.AnthropicProvider;
 import com.photoviewer.ai.GeminiProvider;
 import com.photoviewer.image.ImageManager;
+import com.photoviewer.metrics.AIRequestEvent;
+import com.photoviewer.metrics.Metrics;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -142,10 +144,20 @@ public class AIChatPanel extends VBox {
         }
 
         // Send message to AI
+        Metrics.Sample sample = Metrics.get().start("ai.request");
+        AIRequestEvent event = new AIRequestEvent();
+        event.begin();
+        // Send the image the way the user sees it
+        java.awt.image.BufferedImage image = imageManager.getOrientedImage();
+        String response = null;
         try {
-            return currentAIClient.sendMessage(message, imageManager.getCurrentImage());
+            response = currentAIClient.sendMessage(message, image);
+            return response;
         } catch (Exception e) {
             return "Error: " + e.getMessage();
+        } finally {
+            sample.stop();
+            event.complete(currentAIClient.getClass().getSimpleName(), message, image, response, response == null);
         }
     }
 
@@ -0,0 +1,134 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.ColorLut;
+import com.photoviewer.image.ImageOperations;
+import com.photoviewer.image.PackedRaster;
+import com.photoviewer.image.ToneAdjustment;
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Computes tone adjustment previews on a screen-size proxy of the image.
+ * Every parameter change starts a new frame on a background thread; frames
+ * that are superseded before they finish are abandoned, so only the latest
+ * parameters reach the canvas. The full-resolution image is only processed
+ * once, when the adjustment is committed.
+ */
+public class AdjustmentPreview {
+    // Rows processed between checks for a newer frame
+    private static final int CHUNK_ROWS = 64;
+
+    private final ImageCanvas canvas;
+    private final BufferedImage source;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "adjustment-preview");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong generation = new AtomicLong();
+
+    // Only accessed on the executor thread
+    private BufferedImage proxy;
+
+    /**
+     * @param canvas    Canvas to show the preview on
+     * @param source    Full-resolution image being adjusted
+     * @param maxWidth  Proxy width limit, normally the canvas width
+     * @param maxHeight Proxy height limit, normally the canvas height
+     */
+    public AdjustmentPreview(ImageCanvas canvas, BufferedImage source, int maxWidth, int maxHeight) {
+        this.canvas = canvas;
+        this.source = source;
+        this.maxWidth = Math.max(1, maxWidth);
+        this.maxHeight = Math.max(1, maxHeight);
+    }
+
+    /**
+     * Show a preview for new parameters, abandoning any frame still in
+     * progress.
+     */
+    public void update(ToneAdjustment adjustment) {
+        long frame = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (frame != generation.get()) {
+                return;
+            }
+            ColorLut lut = ColorLut.of(adjustment);
+            BufferedImage result = ImageOperations.copyImage(getProxy());
+            PackedRaster raster = PackedRaster.of(result);
+            for (int y = 0; y < result.getHeight(); y += CHUNK_ROWS) {
+                if (frame != generation.get()) {
+                    return;
+                }
+                lut.applyRows(raster, y, Math.min(result.getHeight(), y + CHUNK_ROWS));
+            }
+            Image image = SwingFXUtils.toFXImage(result, null);
+            Platform.runLater(() -> {
+                if (frame == generation.get()) {
+                    canvas.setPreviewImage(image);
+                }
+            });
+        });
+    }
+
+    /**
+     * Apply the parameters to a full-resolution copy of the image in the
+     * background. The preview stays on screen until the result is delivered
+     * on the JavaFX thread.
+     */
+    public void commit(ToneAdjustment adjustment, Consumer<BufferedImage> onDone) {
+        generation.incrementAndGet();
+        executor.execute(() -> {
+            BufferedImage result = ImageOperations.copyImage(source);
+            if (!ColorLut.of(adjustment).apply(result)) {
+                result = ImageOperations.toArgb(source);
+                ColorLut.of(adjustment).apply(result);
+            }
+            BufferedImage adjusted = result;
+            Platform.runLater(() -> {
+                onDone.accept(adjusted);
+                canvas.setPreviewImage(null);
+            });
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Discard the preview and stop the background thread.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        executor.shutdownNow();
+        canvas.setPreviewImage(null);
+    }
+
+    private BufferedImage getProxy() {
+        if (proxy == null) {
+            double scale = Math.min(1.0, Math.min((double) maxWidth / source.getWidth(),
+                    (double) maxHeight / source.getHeight()));
+            if (scale >= 1.0) {
+                proxy = ImageOperations.toArgb(source);
+            } else {
+                int w = Math.max(1, (int) Math.round(source.getWidth() * scale));
+                int h = Math.max(1, (int) Math.round(source.getHeight() * scale));
+                proxy = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = proxy.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(source, 0, 0, w, h, null);
+                g.dispose();
+            }
+        }
+        return proxy;
+    }
+}
@@ -0,0 +1,98 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.ImageManager;
+import com.photoviewer.image.ToneAdjustment;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Dialog with brightness, contrast, levels and curve sliders. Changes are
+ * previewed live on the canvas and applied to the image when confirmed.
+ */
+public class AdjustmentsDialog {
+    private final ImageCanvas imageCanvas;
+    private final ImageManager imageManager;
+
+    private final Slider brightness = new Slider(-100, 100, 0);
+    private final Slider contrast = new Slider(-100, 100, 0);
+    private final Slider blackPoint = new Slider(0, 254, 0);
+    private final Slider whitePoint = new Slider(1, 255, 255);
+    private final Slider gamma = new Slider(0.2, 5.0, 1.0);
+    private final Slider shadows = new Slider(-64, 64, 0);
+    private final Slider highlights = new Slider(-64, 64, 0);
+
+    public AdjustmentsDialog(ImageCanvas imageCanvas) {
+        this.imageCanvas = imageCanvas;
+        this.imageManager = imageCanvas.getImageManager();
+    }
+
+    public void show() {
+        BufferedImage source = imageManager.getCurrentImage();
+        if (source == null) {
+            return;
+        }
+        imageCanvas.applyCurrentDrawing();
+        source = imageManager.getCurrentImage();
+        long version = imageManager.getImageVersion();
+
+        AdjustmentPreview preview = new AdjustmentPreview(imageCanvas, source,
+                (int) imageCanvas.getWidth(), (int) imageCanvas.getHeight());
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Adjust Colors");
+        dialog.setHeaderText("Brightness, contrast, levels and curves:");
+
+        ButtonType applyButtonType = new ButtonType("Apply", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(applyButtonType, ButtonType.CANCEL);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20));
+        addRow(grid, 0, "Brightness:", brightness);
+        addRow(grid, 1, "Contrast:", contrast);
+        addRow(grid, 2, "Black point:", blackPoint);
+        addRow(grid, 3, "White point:", whitePoint);
+        addRow(grid, 4, "Gamma:", gamma);
+        addRow(grid, 5, "Shadows:", shadows);
+        addRow(grid, 6, "Highlights:", highlights);
+        dialog.getDialogPane().setContent(grid);
+
+        for (Slider slider : new Slider[] { brightness, contrast, blackPoint, whitePoint, gamma, shadows,
+                highlights }) {
+            slider.valueProperty().addListener((obs, oldVal, newVal) -> preview.update(getAdjustment()));
+        }
+
+        ButtonType result = dialog.showAndWait().orElse(ButtonType.CANCEL);
+        ToneAdjustment adjustment = getAdjustment();
+        if (result != applyButtonType || adjustment.isIdentity()) {
+            preview.cancel();
+            return;
+        }
+        preview.commit(adjustment, adjusted -> {
+            // Drop the result if the image was replaced while it was computed
+            if (imageManager.getImageVersion() == version) {
+                imageManager.replaceCurrentImage(adjusted);
+                imageCanvas.displayImage();
+            }
+        });
+    }
+
+    private ToneAdjustment getAdjustment() {
+        return ToneAdjustment.identity()
+                .withLevels((int) blackPoint.getValue(), (int) whitePoint.getValue(), gamma.getValue())
+                .withBrightness(brightness.getValue())
+                .withContrast(contrast.getValue())
+                .withCurve(new int[] { 64, 192 },
+                        new int[] { 64 + (int) shadows.getValue(), 192 + (int) highlights.getValue() });
+    }
+
+    private static void addRow(GridPane grid, int row, String label, Slider slider) {
+        slider.setPrefWidth(260);
+        grid.add(new Label(label), 0, row);
+        grid.add(slider, 1, row);
+    }
+}
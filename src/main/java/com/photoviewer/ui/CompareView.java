@@ -0,0 +1,290 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.DecoderRegistry;
+import com.photoviewer.image.ExifReader;
+import com.photoviewer.image.ImageOperations;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Shows two to four images side by side with their zoom and position
+ * locked together, to pick the best of several similar shots.
+ * <p>
+ * Each viewport draws only the tiles under its visible area, taken from a
+ * {@link TileCache} shared by all viewports, so panning at 100% on large
+ * files only converts the tiles that come into view. Positions are shared
+ * as fractions of the image size, which lines up pixels exactly for images
+ * of equal size.
+ */
+public class CompareView {
+    private static final double MIN_ZOOM = 0.02;
+    private static final double MAX_ZOOM = 8.0;
+    // Budget for converted tiles across all viewports
+    private static final long TILE_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final Stage stage = new Stage();
+    private final TileCache tiles = new TileCache(TILE_CACHE_BYTES);
+    private final List<Viewport> viewports = new ArrayList<>();
+    private final Consumer<File> onOpen;
+
+    // Shared view: screen pixels per image pixel (0 until fitted), and the
+    // image point at the centre of each viewport as fractions of its size
+    private double zoom;
+    private double centerX = 0.5;
+    private double centerY = 0.5;
+    private double lastMouseX;
+    private double lastMouseY;
+    private Viewport hovered;
+
+    /**
+     * @param files  The images to compare, at most four
+     * @param onOpen Called with the image picked with Enter
+     */
+    public CompareView(List<File> files, Consumer<File> onOpen) {
+        this.onOpen = onOpen;
+
+        GridPane grid = new GridPane();
+        grid.setHgap(2);
+        grid.setVgap(2);
+        grid.setStyle("-fx-background-color: #1e1e1e;");
+        int columns = files.size() <= 2 ? files.size() : 2;
+        for (int i = 0; i < files.size(); i++) {
+            Viewport viewport = new Viewport(files.get(i));
+            GridPane.setHgrow(viewport, Priority.ALWAYS);
+            GridPane.setVgrow(viewport, Priority.ALWAYS);
+            grid.add(viewport, i % columns, i / columns);
+            viewports.add(viewport);
+        }
+
+        Scene scene = new Scene(grid, 1200, 800);
+        scene.setOnKeyPressed(e -> {
+            switch (e.getCode()) {
+                case ESCAPE:
+                    stage.close();
+                    break;
+                case DIGIT1:
+                    setZoom(1.0, null, 0, 0);
+                    break;
+                case DIGIT0:
+                case F:
+                    fit();
+                    break;
+                case ENTER:
+                    if (hovered != null) {
+                        onOpen.accept(hovered.file);
+                        stage.close();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        });
+        stage.setScene(scene);
+        stage.setTitle("Compare - Enter opens the image under the pointer, 1 for 100%, 0 to fit");
+        stage.setOnHidden(e -> tiles.close());
+    }
+
+    public void show() {
+        stage.show();
+        for (Viewport viewport : viewports) {
+            viewport.load();
+        }
+    }
+
+    /**
+     * Zoom all viewports to fit the largest image.
+     */
+    private void fit() {
+        double fitted = Double.MAX_VALUE;
+        for (Viewport viewport : viewports) {
+            if (viewport.source != null) {
+                fitted = Math.min(fitted, Math.min(viewport.getWidth() / viewport.source.width,
+                        viewport.getHeight() / viewport.source.height));
+            }
+        }
+        if (fitted != Double.MAX_VALUE) {
+            zoom = Math.max(MIN_ZOOM, Math.min(1.0, fitted));
+            centerX = 0.5;
+            centerY = 0.5;
+            renderAll();
+        }
+    }
+
+    /**
+     * Change the shared zoom, keeping the image point under (x, y) of the
+     * given viewport in place, or the centre if there is no viewport.
+     */
+    private void setZoom(double newZoom, Viewport anchor, double x, double y) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        if (anchor != null && anchor.source != null && zoom > 0) {
+            double dx = x - anchor.getWidth() / 2;
+            double dy = y - anchor.getHeight() / 2;
+            // Image point under the pointer stays put
+            centerX += dx / anchor.source.width * (1 / zoom - 1 / newZoom);
+            centerY += dy / anchor.source.height * (1 / zoom - 1 / newZoom);
+        }
+        zoom = newZoom;
+        renderAll();
+    }
+
+    private void renderAll() {
+        for (Viewport viewport : viewports) {
+            viewport.scheduler.requestRender();
+        }
+    }
+
+    /**
+     * One image of the comparison.
+     */
+    private class Viewport extends StackPane {
+        final File file;
+        final Canvas canvas = new Canvas();
+        final RenderScheduler scheduler = new RenderScheduler(this::render, "compare.render");
+        TileCache.Source source;
+
+        Viewport(File file) {
+            this.file = file;
+            Label name = new Label(file.getName());
+            name.setStyle("-fx-text-fill: white; -fx-background-color: rgba(0,0,0,0.6); -fx-padding: 2 6;");
+            StackPane.setAlignment(name, Pos.TOP_LEFT);
+            Pane canvasPane = new Pane(canvas);
+            canvas.widthProperty().bind(canvasPane.widthProperty());
+            canvas.heightProperty().bind(canvasPane.heightProperty());
+            canvas.widthProperty().addListener((obs, oldVal, newVal) -> scheduler.requestRender());
+            canvas.heightProperty().addListener((obs, oldVal, newVal) -> scheduler.requestRender());
+            getChildren().addAll(canvasPane, name);
+            setMinSize(0, 0);
+
+            setOnMouseEntered(e -> hovered = this);
+            setOnMousePressed(e -> {
+                lastMouseX = e.getX();
+                lastMouseY = e.getY();
+            });
+            setOnMouseDragged(e -> {
+                if (source != null && zoom > 0) {
+                    centerX -= (e.getX() - lastMouseX) / zoom / source.width;
+                    centerY -= (e.getY() - lastMouseY) / zoom / source.height;
+                    lastMouseX = e.getX();
+                    lastMouseY = e.getY();
+                    renderAll();
+                }
+            });
+            setOnScroll(e -> {
+                if (zoom > 0 && e.getDeltaY() != 0) {
+                    setZoom(zoom * (e.getDeltaY() > 0 ? 1.25 : 0.8), this, e.getX(), e.getY());
+                }
+            });
+            setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2) {
+                    if (zoom < 1.0) {
+                        setZoom(1.0, this, e.getX(), e.getY());
+                    } else {
+                        fit();
+                    }
+                }
+            });
+        }
+
+        void load() {
+            CompletableFuture.supplyAsync(() -> {
+                try {
+                    BufferedImage image = DecoderRegistry.get().decode(file);
+                    return image == null ? null
+                            : ImageOperations.applyOrientation(image, ExifReader.read(file).getOrientation());
+                } catch (IOException e) {
+                    System.err.println("Error loading " + file.getName() + ": " + e.getMessage());
+                    return null;
+                }
+            }).thenAccept(image -> Platform.runLater(() -> {
+                if (image != null) {
+                    source = tiles.addSource(image);
+                    if (zoom == 0) {
+                        fit();
+                    }
+                }
+                scheduler.requestRender();
+            }));
+        }
+
+        private void render() {
+            GraphicsContext gc = canvas.getGraphicsContext2D();
+            double width = canvas.getWidth();
+            double height = canvas.getHeight();
+            gc.setFill(Color.rgb(43, 43, 43));
+            gc.fillRect(0, 0, width, height);
+            if (source == null || zoom == 0) {
+                return;
+            }
+
+            // Screen position of the image origin
+            double originX = width / 2 - centerX * source.width * zoom;
+            double originY = height / 2 - centerY * source.height * zoom;
+            int level = Math.min(MipmapCache.levelForZoom(zoom), source.maxLevel);
+            int tileSpan = TileCache.TILE_SIZE << level; // Image pixels per tile
+
+            int firstX = (int) Math.max(0, Math.floor(-originX / zoom / tileSpan));
+            int firstY = (int) Math.max(0, Math.floor(-originY / zoom / tileSpan));
+            int lastX = (int) Math.min((source.width - 1) / tileSpan, Math.floor((width - originX) / zoom / tileSpan));
+            int lastY = (int) Math.min((source.height - 1) / tileSpan,
+                    Math.floor((height - originY) / zoom / tileSpan));
+            for (int ty = firstY; ty <= lastY; ty++) {
+                for (int tx = firstX; tx <= lastX; tx++) {
+                    // Snap edges to whole pixels so neighbouring tiles do not leave seams
+                    double x0 = Math.floor(originX + (double) tx * tileSpan * zoom);
+                    double y0 = Math.floor(originY + (double) ty * tileSpan * zoom);
+                    double x1 = Math.floor(originX + Math.min((double) (tx + 1) * tileSpan, source.width) * zoom);
+                    double y1 = Math.floor(originY + Math.min((double) (ty + 1) * tileSpan, source.height) * zoom);
+                    Image tile = tiles.getTile(source, level, tx, ty, scheduler::requestRender);
+                    if (tile != null) {
+                        gc.drawImage(tile, x0, y0, x1 - x0, y1 - y0);
+                    } else {
+                        drawCoarser(gc, level, tx, ty, x0, y0, x1 - x0, y1 - y0);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fill in a tile that is still being converted from a coarser level
+         * that is already cached.
+         */
+        private void drawCoarser(GraphicsContext gc, int level, int tx, int ty, double x, double y, double w,
+                double h) {
+            for (int coarser = level + 1; coarser <= source.maxLevel; coarser++) {
+                int shift = coarser - level;
+                Image tile = tiles.getCachedTile(source, coarser, tx >> shift, ty >> shift);
+                if (tile != null) {
+                    // Part of the coarser tile covering this one
+                    double size = (double) TileCache.TILE_SIZE / (1 << shift);
+                    double sx = (tx - ((tx >> shift) << shift)) * size;
+                    double sy = (ty - ((ty >> shift) << shift)) * size;
+                    double sw = Math.min(size, tile.getWidth() - sx);
+                    double sh = Math.min(size, tile.getHeight() - sy);
+                    if (sw > 0 && sh > 0) {
+                        gc.drawImage(tile, sx, sy, sw, sh, x, y, w, h);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.ImageManager;
+import com.photoviewer.image.ImageStatistics;
+import com.photoviewer.image.StatisticsService;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+
+/**
+ * Panel showing the RGB histogram and basic statistics of the current
+ * image. Statistics are computed by a {@link StatisticsService} in the
+ * background and only while the panel is shown.
+ */
+public class HistogramPanel extends HBox {
+    private static final double HISTOGRAM_HEIGHT = 80;
+    private static final Color[] CHANNEL_COLORS = {
+            Color.rgb(255, 60, 60, 0.5), Color.rgb(60, 255, 60, 0.5), Color.rgb(80, 120, 255, 0.5) };
+
+    private final StatisticsService statistics = new StatisticsService();
+    private final Canvas canvas = new Canvas(256, HISTOGRAM_HEIGHT);
+    private final Label summary = new Label();
+    private boolean refreshPending = false;
+
+    public HistogramPanel(ImageManager imageManager) {
+        setSpacing(15);
+        setAlignment(Pos.CENTER_LEFT);
+        setPadding(new Insets(5, 10, 5, 10));
+        setStyle("-fx-background-color: #333333;");
+        summary.setStyle("-fx-text-fill: #cccccc; -fx-font-size: 11px; -fx-font-family: monospace;");
+        getChildren().addAll(canvas, summary);
+
+        // The service must see each change before the refresh it triggers
+        statistics.imageChanged(imageManager.getCurrentImage(), null);
+        imageManager.addChangeListener(statistics);
+        imageManager.addChangeListener((image, dirty) -> {
+            if (getParent() != null) {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Recompute the statistics if needed and redraw. Requests made while a
+     * computation is running are merged into one.
+     */
+    public void refresh() {
+        ImageStatistics cached = statistics.getCached();
+        if (cached != null) {
+            draw(cached);
+            return;
+        }
+        if (refreshPending) {
+            return;
+        }
+        refreshPending = true;
+        statistics.compute(result -> Platform.runLater(() -> {
+            refreshPending = false;
+            draw(result);
+            if (statistics.getCached() == null && result != null) {
+                // Changed again while counting
+                refresh();
+            }
+        }));
+    }
+
+    private void draw(ImageStatistics stats) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.rgb(30, 30, 30));
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (stats == null) {
+            summary.setText("");
+            return;
+        }
+
+        // Scale to the tallest bin, ignoring the clipped ends which often spike
+        int peak = 1;
+        for (int c = ImageStatistics.RED; c <= ImageStatistics.BLUE; c++) {
+            int[] h = stats.getHistogram(c);
+            for (int v = 1; v < 255; v++) {
+                peak = Math.max(peak, h[v]);
+            }
+        }
+        for (int c = ImageStatistics.RED; c <= ImageStatistics.BLUE; c++) {
+            int[] h = stats.getHistogram(c);
+            gc.setFill(CHANNEL_COLORS[c]);
+            for (int v = 0; v < 256; v++) {
+                double height = Math.min(1.0, (double) h[v] / peak) * HISTOGRAM_HEIGHT;
+                gc.fillRect(v, HISTOGRAM_HEIGHT - height, 1, height);
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        String[] names = { "R", "G", "B", "L" };
+        for (int c = ImageStatistics.RED; c <= ImageStatistics.LUMA; c++) {
+            text.append(String.format("%s  min %3d  max %3d  mean %6.1f  clipped %5.2f%% / %5.2f%%%n",
+                    names[c], stats.getMin(c), stats.getMax(c), stats.getMean(c),
+                    100.0 * stats.getClippedShadows(c) / stats.getPixelCount(),
+                    100.0 * stats.getClippedHighlights(c) / stats.getPixelCount()));
+        }
+        summary.setText(text.toString().trim());
+    }
+}
@@ -1,16 +1,22 @@
 package com.photoviewer.ui;
 
+import com.photoviewer.image.DrawingLayer;
+import com.photoviewer.image.FrameSequence;
 import com.photoviewer.image.ImageManager;
-import com.photoviewer.image.ImageOperations;
+import com.photoviewer.image.Orientation;
+import com.photoviewer.metrics.CanvasRepaintEvent;
+import com.photoviewer.metrics.LatencyHistogram;
 import com.photoviewer.tools.*;
+import javafx.animation.AnimationTimer;
+import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 
 import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.control.ScrollBar;
-import javafx.geometry.Orientation;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 
@@ -21,32 +27,78 @@ import java.awt.image.BufferedImage;
  * Handles zoom, pan, and tool interactions.
  */
 public class ImageCanvas extends Pane {
+    private static final double MIN_ZOOM = 0.1;
+    private static final double MAX_ZOOM = 5.0;
+    // Time constant of the exponential zoom animation
+    private static final double ZOOM_TIME_CONSTANT_NANOS = 60_000_000.0;
+
     private final Canvas canvas;
     private final ImageManager imageManager;
 
     private final ScrollBar hBar;
     private final ScrollBar vBar;
+    private final RenderScheduler renderScheduler;
+    private final MipmapCache mipmaps;
 
     private double zoomLevel = 1.0;
     private double offsetX = 0;
     private double offsetY = 0;
 
+    // Animated zoom state
+    private double targetZoom = 1.0;
+    private double zoomAnchorX;
+    private double zoomAnchorY;
+    private boolean zoomAnimating = false;
+    private long lastZoomStep;
+
     private Tool currentTool;
-    private BufferedImage drawingLayer;
+    private DrawingLayer drawingLayer;
+    // Adjustment preview drawn in place of the image while a dialog is open
+    private Image previewImage;
+    private long previewVersion;
+
+    // Animation playback: the frame shown in place of the image until the
+    // image is edited, and when the next one is due
+    private final AnimationTimer animationTimer;
+    private FrameSequence animation;
+    private WritableImage animationFrame;
+    private long animationVersion;
+    private long nextFrameTime;
 
     // Mouse tracking
     private double lastMouseX;
     private double lastMouseY;
     private boolean isPanning = false;
 
+    // Drag samples waiting for the next frame, and the result of the last
+    // screen-to-image conversion (kept in fields to avoid per-event arrays)
+    private final PointerBuffer pendingDrag = new PointerBuffer();
+    private double mappedX;
+    private double mappedY;
+
+    // Orientation transform of the current image, recomputed only when the
+    // orientation or image size changes
+    private double[] orientationMatrix = Orientation.matrix(Orientation.NORMAL, 0, 0);
+    private int matrixOrientation = Orientation.NORMAL;
+    private int matrixWidth;
+    private int matrixHeight;
+
     public ImageCanvas(ImageManager imageManager) {
         this.imageManager = imageManager;
         this.canvas = new Canvas();
         this.hBar = new ScrollBar();
         this.vBar = new ScrollBar();
+        this.renderScheduler = new RenderScheduler(this::render, "canvas.render");
+        this.mipmaps = new MipmapCache(this::displayImage);
+        this.animationTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stepAnimation(now);
+            }
+        };
 
-        hBar.setOrientation(Orientation.HORIZONTAL);
-        vBar.setOrientation(Orientation.VERTICAL);
+        hBar.setOrientation(javafx.geometry.Orientation.HORIZONTAL);
+        vBar.setOrientation(javafx.geometry.Orientation.VERTICAL);
         hBar.setVisible(false);
         vBar.setVisible(false);
 
@@ -118,8 +170,9 @@ public class ImageCanvas extends Pane {
         if (e.isMiddleButtonDown() || (e.isPrimaryButtonDown() && e.isControlDown())) {
             isPanning = true;
         } else if (currentTool != null) {
-            double[] imageCoords = screenToImageCoords(e.getX(), e.getY());
-            currentTool.onMousePressed(imageCoords[0], imageCoords[1]);
+            flushPendingDrag();
+            screenToImageCoords(e.getX(), e.getY());
+            currentTool.onMousePressed(mappedX, mappedY);
             displayImage();
         }
     }
@@ -134,8 +187,9 @@ public class ImageCanvas extends Pane {
             lastMouseY = e.getY();
             displayImage();
         } else if (currentTool != null) {
-            double[] imageCoords = screenToImageCoords(e.getX(), e.getY());
-            currentTool.onMouseDragged(imageCoords[0], imageCoords[1]);
+            // Delivered to the tool in one batch on the next frame
+            screenToImageCoords(e.getX(), e.getY());
+            pendingDrag.add(mappedX, mappedY);
             displayImage();
         }
     }
@@ -144,44 +198,155 @@ public class ImageCanvas extends Pane {
         if (isPanning) {
             isPanning = false;
         } else if (currentTool != null) {
-            double[] imageCoords = screenToImageCoords(e.getX(), e.getY());
-            currentTool.onMouseReleased(imageCoords[0], imageCoords[1]);
+            flushPendingDrag();
+            screenToImageCoords(e.getX(), e.getY());
+            currentTool.onMouseReleased(mappedX, mappedY);
             displayImage();
         }
     }
 
     private void handleScroll(ScrollEvent e) {
-        if (e.getDeltaY() > 0) {
-            zoomIn();
-        } else {
-            zoomOut();
+        if (e.getDeltaY() == 0)
+            return;
+
+        // A mouse wheel notch reports 40 pixels and zooms by 1.2x; trackpads
+        // report smaller deltas and get proportionally finer steps
+        zoomTo(currentZoomTarget() * Math.pow(1.2, e.getDeltaY() / 40.0), e.getX(), e.getY());
+    }
+
+    /**
+     * Hand all drag samples collected since the last frame to the current tool.
+     */
+    private void flushPendingDrag() {
+        if (!pendingDrag.isEmpty()) {
+            if (currentTool != null) {
+                currentTool.onMouseDragged(pendingDrag);
+            }
+            pendingDrag.clear();
         }
     }
 
     /**
-     * Convert screen coordinates to image coordinates.
+     * Convert screen coordinates to image coordinates, storing the result in
+     * mappedX and mappedY.
      */
-    private double[] screenToImageCoords(double screenX, double screenY) {
+    private void screenToImageCoords(double screenX, double screenY) {
         BufferedImage img = imageManager.getCurrentImage();
-        if (img == null)
-            return new double[] { 0, 0 };
+        if (img == null) {
+            mappedX = 0;
+            mappedY = 0;
+            return;
+        }
 
-        double zoomedWidth = img.getWidth() * zoomLevel;
-        double zoomedHeight = img.getHeight() * zoomLevel;
+        double zoomedWidth = displayWidth(img) * zoomLevel;
+        double zoomedHeight = displayHeight(img) * zoomLevel;
         double centX = (canvas.getWidth() - zoomedWidth) / 2;
         double centY = (canvas.getHeight() - zoomedHeight) / 2;
 
-        double imageX = (screenX - centX - offsetX) / zoomLevel;
-        double imageY = (screenY - centY - offsetY) / zoomLevel;
+        // Undo the orientation: the inverse of the matrix is its transpose
+        double[] m = orientationMatrix(img);
+        double dx = (screenX - centX - offsetX) / zoomLevel - m[4];
+        double dy = (screenY - centY - offsetY) / zoomLevel - m[5];
+        mappedX = m[0] * dx + m[1] * dy;
+        mappedY = m[2] * dx + m[3] * dy;
+    }
 
-        return new double[] { imageX, imageY };
+    /**
+     * Get the transform from stored to displayed image coordinates.
+     */
+    private double[] orientationMatrix(BufferedImage img) {
+        int orientation = imageManager.getOrientation();
+        if (orientation != matrixOrientation || img.getWidth() != matrixWidth || img.getHeight() != matrixHeight) {
+            orientationMatrix = Orientation.matrix(orientation, img.getWidth(), img.getHeight());
+            matrixOrientation = orientation;
+            matrixWidth = img.getWidth();
+            matrixHeight = img.getHeight();
+        }
+        return orientationMatrix;
     }
 
     /**
-     * Display the current image on the canvas.
+     * Width of the image as displayed, after its EXIF orientation.
+     */
+    private double displayWidth(BufferedImage img) {
+        return Orientation.displayWidth(imageManager.getOrientation(), img.getWidth(), img.getHeight());
+    }
+
+    private double displayHeight(BufferedImage img) {
+        return Orientation.displayHeight(imageManager.getOrientation(), img.getWidth(), img.getHeight());
+    }
+
+    /**
+     * Schedule a repaint of the current image. Repaints requested within the
+     * same frame are coalesced into a single render.
      */
     public void displayImage() {
-        Image image = imageManager.getCurrentImageFX();
+        renderScheduler.requestRender();
+    }
+
+    /**
+     * Play the frames of a new animation, or stop playing if it is null or
+     * holds pages rather than frames.
+     */
+    private void startAnimation(FrameSequence frames) {
+        animation = frames;
+        animationFrame = null;
+        if (frames != null && frames.isAnimated()) {
+            animationVersion = imageManager.getImageVersion();
+            nextFrameTime = 0;
+            animationTimer.start();
+        } else {
+            animationTimer.stop();
+        }
+    }
+
+    /**
+     * Show the next decoded frame once the current one has been on screen
+     * for its delay. Playback stops when the image is edited.
+     */
+    private void stepAnimation(long now) {
+        if (animationVersion != imageManager.getImageVersion()) {
+            animationTimer.stop();
+            animationFrame = null;
+            return;
+        }
+        if (now < nextFrameTime) {
+            return;
+        }
+        FrameSequence.Frame frame = animation.poll();
+        if (frame == null) {
+            // The decoder is behind; show this frame longer
+            return;
+        }
+        animationFrame = SwingFXUtils.toFXImage(frame.image, animationFrame);
+        animation.release(frame);
+        // Schedule from the due time so delays do not accumulate drift
+        nextFrameTime = (nextFrameTime == 0 || now - nextFrameTime > 1_000_000_000L ? now : nextFrameTime)
+                + frame.delayMillis * 1_000_000L;
+        displayImage();
+    }
+
+    /**
+     * Draw the current image on the canvas.
+     */
+    private void render() {
+        CanvasRepaintEvent event = new CanvasRepaintEvent();
+        event.begin();
+        try {
+            paint();
+        } finally {
+            event.complete(imageManager.getCurrentImage(), zoomLevel, canvas.getWidth(), canvas.getHeight());
+        }
+    }
+
+    private void paint() {
+        flushPendingDrag();
+        BufferedImage source = imageManager.getCurrentImage();
+        mipmaps.update(source, imageManager.getImageVersion());
+        if (imageManager.getFrameSequence() != animation) {
+            startAnimation(imageManager.getFrameSequence());
+        }
+        stepZoomAnimation(source);
 
         GraphicsContext gc = canvas.getGraphicsContext2D();
 
@@ -189,22 +354,43 @@ public class ImageCanvas extends Pane {
         gc.setFill(Color.rgb(43, 43, 43));
         gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
 
-        if (image == null)
+        if (source == null)
             return;
 
+        double imageWidth = source.getWidth();
+        double imageHeight = source.getHeight();
+        double[] orientation = orientationMatrix(source);
+
         // Calculate total zoomed image dimensions
-        double zoomedWidth = image.getWidth() * zoomLevel;
-        double zoomedHeight = image.getHeight() * zoomLevel;
+        double zoomedWidth = displayWidth(source) * zoomLevel;
+        double zoomedHeight = displayHeight(source) * zoomLevel;
 
         // Center the image within the view
         double centX = (canvas.getWidth() - zoomedWidth) / 2;
         double centY = (canvas.getHeight() - zoomedHeight) / 2;
 
-        // Draw image with zoom
+        // Draw image with zoom, using a pre-scaled level when zoomed out
         gc.save();
         gc.translate(centX + offsetX, centY + offsetY);
         gc.scale(zoomLevel, zoomLevel);
-        gc.drawImage(image, 0, 0);
+        // EXIF orientation is applied as part of the view, the pixels stay raw
+        gc.transform(orientation[0], orientation[1], orientation[2], orientation[3], orientation[4],
+                orientation[5]);
+        int levelIndex = MipmapCache.levelForZoom(zoomLevel);
+        Image level = mipmaps.getLevel(levelIndex);
+        if (level == null && zoomAnimating && !imageManager.isImageFXReady()) {
+            // Keep the animation fluid while the full image is prepared off-thread
+            level = mipmaps.getCoarserLevel(levelIndex);
+        }
+        if (previewImage != null && previewVersion == imageManager.getImageVersion()) {
+            gc.drawImage(previewImage, 0, 0, imageWidth, imageHeight);
+        } else if (animationFrame != null && animationVersion == imageManager.getImageVersion()) {
+            gc.drawImage(animationFrame, 0, 0);
+        } else if (level != null) {
+            gc.drawImage(level, 0, 0, imageWidth, imageHeight);
+        } else {
+            gc.drawImage(imageManager.getCurrentImageFX(), 0, 0);
+        }
         gc.restore();
 
         // Draw tool overlay if active
@@ -212,14 +398,16 @@ public class ImageCanvas extends Pane {
             gc.save();
             gc.translate(centX + offsetX, centY + offsetY);
             gc.scale(zoomLevel, zoomLevel);
+            gc.transform(orientation[0], orientation[1], orientation[2], orientation[3], orientation[4],
+                    orientation[5]);
             currentTool.draw(gc);
             gc.restore();
         }
 
-        updateScrollBars(image.getWidth(), image.getHeight(), zoomedWidth, zoomedHeight);
+        updateScrollBars(zoomedWidth, zoomedHeight);
     }
 
-    private void updateScrollBars(double imgW, double imgH, double zoomedW, double zoomedH) {
+    private void updateScrollBars(double zoomedW, double zoomedH) {
         double viewW = getWidth();
         double viewH = getHeight();
 
@@ -259,23 +447,86 @@ public class ImageCanvas extends Pane {
     }
 
     public void zoomIn() {
-        zoomLevel = Math.min(zoomLevel * 1.2, 5.0);
-        displayImage();
+        zoomTo(currentZoomTarget() * 1.2, canvas.getWidth() / 2, canvas.getHeight() / 2);
     }
 
     public void zoomOut() {
-        zoomLevel = Math.max(zoomLevel / 1.2, 0.1);
+        zoomTo(currentZoomTarget() / 1.2, canvas.getWidth() / 2, canvas.getHeight() / 2);
+    }
+
+    /**
+     * Start an animated zoom towards the given level, keeping the image point
+     * under the anchor (in canvas coordinates) fixed on screen.
+     */
+    private void zoomTo(double zoom, double anchorX, double anchorY) {
+        if (imageManager.getCurrentImage() == null)
+            return;
+
+        targetZoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+        zoomAnchorX = anchorX;
+        zoomAnchorY = anchorY;
+        if (!zoomAnimating) {
+            zoomAnimating = true;
+            lastZoomStep = System.nanoTime();
+        }
+
+        // Prepare the image the animation will end on while it is running
+        if (MipmapCache.levelForZoom(targetZoom) == 0) {
+            imageManager.prepareImageFX(this::displayImage);
+        }
         displayImage();
     }
 
+    private double currentZoomTarget() {
+        return zoomAnimating ? targetZoom : zoomLevel;
+    }
+
+    /**
+     * Advance the zoom animation to the current time and schedule the next
+     * frame if the target has not been reached yet.
+     */
+    private void stepZoomAnimation(BufferedImage img) {
+        if (!zoomAnimating)
+            return;
+        if (img == null) {
+            zoomAnimating = false;
+            return;
+        }
+
+        long now = System.nanoTime();
+        double progress = 1 - Math.exp(-(now - lastZoomStep) / ZOOM_TIME_CONSTANT_NANOS);
+        lastZoomStep = now;
+
+        // Interpolate geometrically so zoom speed feels constant
+        double next = zoomLevel * Math.pow(targetZoom / zoomLevel, progress);
+        if (Math.abs(next / targetZoom - 1) < 0.002) {
+            next = targetZoom;
+            zoomAnimating = false;
+        }
+
+        double centX = (canvas.getWidth() - displayWidth(img) * zoomLevel) / 2;
+        double centY = (canvas.getHeight() - displayHeight(img) * zoomLevel) / 2;
+        double imageX = (zoomAnchorX - centX - offsetX) / zoomLevel;
+        double imageY = (zoomAnchorY - centY - offsetY) / zoomLevel;
+
+        zoomLevel = next;
+        offsetX = zoomAnchorX - (canvas.getWidth() - displayWidth(img) * zoomLevel) / 2 - imageX * zoomLevel;
+        offsetY = zoomAnchorY - (canvas.getHeight() - displayHeight(img) * zoomLevel) / 2 - imageY * zoomLevel;
+
+        if (zoomAnimating) {
+            renderScheduler.requestRender();
+        }
+    }
+
     public void fitToWindow() {
         BufferedImage img = imageManager.getCurrentImage();
         if (img == null)
             return;
 
-        double scaleX = canvas.getWidth() / img.getWidth();
-        double scaleY = canvas.getHeight() / img.getHeight();
+        double scaleX = canvas.getWidth() / displayWidth(img);
+        double scaleY = canvas.getHeight() / displayHeight(img);
         zoomLevel = Math.min(scaleX, scaleY) * 0.9; // 90% to add some padding
+        zoomAnimating = false;
 
         // Reset offsets
         offsetX = 0;
@@ -287,6 +538,7 @@ public class ImageCanvas extends Pane {
     public void setTool(Tool tool) {
         // Reset cursor when changing tools
         canvas.setCursor(javafx.scene.Cursor.DEFAULT);
+        flushPendingDrag();
         this.currentTool = tool;
     }
 
@@ -304,6 +556,14 @@ public class ImageCanvas extends Pane {
         }
     }
 
+    public boolean pasteSelection() {
+        if (currentTool instanceof ScissorsTool && ((ScissorsTool) currentTool).pasteSelection()) {
+            displayImage();
+            return true;
+        }
+        return false;
+    }
+
     public void applyCurrentDrawing() {
         if (drawingLayer != null) {
             imageManager.applyDrawing(drawingLayer);
@@ -316,10 +576,18 @@ public class ImageCanvas extends Pane {
         return zoomLevel;
     }
 
-    public BufferedImage getDrawingLayer() {
+    /**
+     * Get the render time statistics for diagnostics.
+     */
+    public LatencyHistogram getFrameTimes() {
+        return renderScheduler.getFrameTimes();
+    }
+
+    public DrawingLayer getDrawingLayer() {
         if (drawingLayer == null && imageManager.getCurrentImage() != null) {
             BufferedImage img = imageManager.getCurrentImage();
-            drawingLayer = ImageOperations.createTransparentImage(img.getWidth(), img.getHeight());
+            // Tiles are only allocated where something gets painted
+            drawingLayer = new DrawingLayer(img.getWidth(), img.getHeight());
         }
         return drawingLayer;
     }
@@ -328,6 +596,17 @@ public class ImageCanvas extends Pane {
         drawingLayer = null;
     }
 
+    /**
+     * Show an image scaled over the current image instead of it, or restore
+     * the normal view when null. The preview is hidden once the current image
+     * changes.
+     */
+    public void setPreviewImage(Image image) {
+        previewImage = image;
+        previewVersion = imageManager.getImageVersion();
+        displayImage();
+    }
+
     public ImageManager getImageManager() {
         return imageManager;
     }
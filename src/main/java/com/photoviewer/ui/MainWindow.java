@@ -1,6 +1,18 @@
 package com.photoviewer.ui;
 
+import com.photoviewer.AppDirectories;
+import com.photoviewer.catalog.HashIndex;
+import com.photoviewer.catalog.MetadataCatalog;
+import com.photoviewer.image.ColorLut;
+import com.photoviewer.image.DecoderRegistry;
+import com.photoviewer.image.FilterEngine;
+import com.photoviewer.image.FrameSequence;
+import com.photoviewer.image.ImageFilter;
 import com.photoviewer.image.ImageManager;
+import com.photoviewer.image.MemoryGovernor;
+import com.photoviewer.image.SessionAutosave;
+import com.photoviewer.metrics.FlightRecording;
+import com.photoviewer.metrics.Metrics;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyEvent;
@@ -10,6 +22,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.geometry.Pos;
 import javafx.geometry.Insets;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
@@ -26,7 +39,15 @@ public class MainWindow {
     private final ToolPanel toolPanel;
     private final AIChatPanel aiChatPanel;
     private final ThumbnailBar thumbnailBar;
+    private final HistogramPanel histogramPanel;
+    private final MetricsOverlay metricsOverlay;
     private final ImageManager imageManager;
+    private VBox bottomContainer;
+    private HashIndex hashIndex;
+    private final MetadataCatalog catalog;
+    private MetadataCatalog.SortKey sortKey = MetadataCatalog.SortKey.NAME;
+    // null shows all files, otherwise only portrait (true) or landscape images
+    private Boolean portraitFilter;
 
     public MainWindow(Stage stage) {
         this.stage = stage;
@@ -38,24 +59,30 @@ public class MainWindow {
         this.toolPanel = new ToolPanel(imageCanvas, imageManager, this);
         this.aiChatPanel = new AIChatPanel(imageCanvas, imageManager);
         this.thumbnailBar = new ThumbnailBar(imageManager);
+        this.histogramPanel = new HistogramPanel(imageManager);
+        this.metricsOverlay = new MetricsOverlay();
+        this.catalog = new MetadataCatalog(new File(AppDirectories.getDataDirectory(), "catalog.bin"));
 
         setupUI();
         setupMenuBar();
     }
 
     private void setupUI() {
-        root.setCenter(imageCanvas);
+        javafx.scene.layout.StackPane center = new javafx.scene.layout.StackPane(imageCanvas, metricsOverlay);
+        javafx.scene.layout.StackPane.setAlignment(metricsOverlay, Pos.TOP_RIGHT);
+        javafx.scene.layout.StackPane.setMargin(metricsOverlay, new Insets(8));
+        root.setCenter(center);
         root.setLeft(toolPanel);
 
         // Create hint bar
-        Label hintLabel = new Label("R: Rotate | ↑/↓: Zoom | ←/→: Navigation | Ctrl+Z/Y: Undo/Redo");
+        Label hintLabel = new Label("R: Rotate | ↑/↓: Zoom | ←/→: Navigation | Enter: Paste | Ctrl+Z/Y: Undo/Redo");
         hintLabel.setStyle("-fx-text-fill: #aaaaaa; -fx-font-size: 11px;");
         HBox hintBar = new HBox(hintLabel);
         hintBar.setAlignment(Pos.CENTER);
         hintBar.setPadding(new Insets(2, 10, 2, 10));
         hintBar.setStyle("-fx-background-color: #333333;");
 
-        VBox bottomContainer = new VBox(thumbnailBar, hintBar);
+        bottomContainer = new VBox(thumbnailBar, hintBar);
         root.setBottom(bottomContainer);
         // AI panel is hidden by default - will be shown via toggle button
 
@@ -123,6 +150,30 @@ public class MainWindow {
                         }
                         event.consume();
                         break;
+                    case ENTER:
+                        // Leave Enter to text fields unless a selection was pasted
+                        if (imageCanvas.pasteSelection()) {
+                            event.consume();
+                        }
+                        break;
+                    case PAGE_DOWN:
+                    case PAGE_UP:
+                        // Pages of a multi-page file
+                        int page = imageManager.getPageIndex()
+                                + (event.getCode() == javafx.scene.input.KeyCode.PAGE_DOWN ? 1 : -1);
+                        if (imageManager.hasPage(page) && confirmDiscardPageEdits()) {
+                            imageManager.loadPage(page, () -> {
+                                imageCanvas.displayImage();
+                                imageCanvas.fitToWindow();
+                                updateTitle();
+                            });
+                        }
+                        event.consume();
+                        break;
+                    case F5:
+                        startSlideshow();
+                        event.consume();
+                        break;
                     case R:
                         imageManager.rotateImage90Right();
                         imageCanvas.displayImage();
@@ -171,7 +222,17 @@ public class MainWindow {
         MenuItem exitItem = new MenuItem("Exit");
         exitItem.setOnAction(e -> stage.close());
 
-        fileMenu.getItems().addAll(openItem, saveItem, saveAsItem, new SeparatorMenuItem(), exitItem);
+        MenuItem findSimilarItem = new MenuItem("Find Similar Images...");
+        findSimilarItem.setOnAction(e -> findSimilarImages());
+
+        MenuItem indexFolderItem = new MenuItem("Add Folder to Similarity Index...");
+        indexFolderItem.setOnAction(e -> indexFolder());
+
+        MenuItem infoItem = new MenuItem("Image Info...");
+        infoItem.setOnAction(e -> showImageInfo());
+
+        fileMenu.getItems().addAll(openItem, saveItem, saveAsItem, new SeparatorMenuItem(), infoItem,
+                findSimilarItem, indexFolderItem, new SeparatorMenuItem(), exitItem);
 
         // Edit Menu
         Menu editMenu = new Menu("Edit");
@@ -184,7 +245,36 @@ public class MainWindow {
         MenuItem resizeItem = new MenuItem("Resize Image...");
         resizeItem.setOnAction(e -> showResizeDialog());
 
-        editMenu.getItems().addAll(undoItem, redoItem, new SeparatorMenuItem(), resizeItem);
+        MenuItem adjustItem = new MenuItem("Adjust Colors...");
+        adjustItem.setOnAction(e -> {
+            if (imageManager.getCurrentImage() == null) {
+                showAlert("No Image", "Please open an image first.");
+            } else {
+                new AdjustmentsDialog(imageCanvas).show();
+            }
+        });
+
+        editMenu.getItems().addAll(undoItem, redoItem, new SeparatorMenuItem(), resizeItem, adjustItem);
+
+        // Filters Menu
+        Menu filtersMenu = new Menu("Filters");
+        MenuItem blurItem = new MenuItem("Gaussian Blur...");
+        blurItem.setOnAction(e -> showBlurDialog());
+
+        MenuItem sharpenItem = new MenuItem("Sharpen");
+        sharpenItem.setOnAction(e -> applyFilter(FilterEngine.unsharpMask(1.5, 1.0, 3)));
+
+        MenuItem edgeItem = new MenuItem("Find Edges");
+        edgeItem.setOnAction(e -> applyFilter(FilterEngine.edgeDetect()));
+
+        MenuItem invertItem = new MenuItem("Invert Colors");
+        invertItem.setOnAction(e -> {
+            imageCanvas.applyCurrentDrawing();
+            imageManager.adjustColors(ColorLut.invert());
+            imageCanvas.displayImage();
+        });
+
+        filtersMenu.getItems().addAll(blurItem, sharpenItem, edgeItem, new SeparatorMenuItem(), invertItem);
 
         // View Menu
         Menu viewMenu = new Menu("View");
@@ -207,8 +297,71 @@ public class MainWindow {
             }
         });
 
-        viewMenu.getItems().addAll(zoomInItem, zoomOutItem, fitToWindowItem,
-                new SeparatorMenuItem(), toggleAIPanelItem);
+        CheckMenuItem toggleHistogramItem = new CheckMenuItem("Show Histogram");
+        toggleHistogramItem.setOnAction(e -> {
+            if (toggleHistogramItem.isSelected()) {
+                bottomContainer.getChildren().add(0, histogramPanel);
+                histogramPanel.refresh();
+            } else {
+                bottomContainer.getChildren().remove(histogramPanel);
+            }
+        });
+
+        Menu sortMenu = new Menu("Sort Folder By");
+        ToggleGroup sortGroup = new ToggleGroup();
+        String[] sortNames = { "Name", "Date Taken", "Date Modified", "File Size", "Dimensions" };
+        for (MetadataCatalog.SortKey key : MetadataCatalog.SortKey.values()) {
+            RadioMenuItem item = new RadioMenuItem(sortNames[key.ordinal()]);
+            item.setToggleGroup(sortGroup);
+            item.setSelected(key == sortKey);
+            item.setOnAction(e -> {
+                sortKey = key;
+                applyDirectoryOrder();
+            });
+            sortMenu.getItems().add(item);
+        }
+
+        Menu showMenu = new Menu("Show in Folder");
+        ToggleGroup showGroup = new ToggleGroup();
+        Boolean[] filters = { null, false, true };
+        String[] filterNames = { "All Images", "Landscape Only", "Portrait Only" };
+        for (int i = 0; i < filters.length; i++) {
+            Boolean filter = filters[i];
+            RadioMenuItem item = new RadioMenuItem(filterNames[i]);
+            item.setToggleGroup(showGroup);
+            item.setSelected(filter == null);
+            item.setOnAction(e -> {
+                portraitFilter = filter;
+                applyDirectoryOrder();
+            });
+            showMenu.getItems().add(item);
+        }
+
+        MenuItem slideshowItem = new MenuItem("Slideshow");
+        slideshowItem.setOnAction(e -> startSlideshow());
+
+        MenuItem compareItem = new MenuItem("Compare...");
+        compareItem.setOnAction(e -> startCompare());
+
+        MenuItem decoderTimingsItem = new MenuItem("Decoder Timings...");
+        decoderTimingsItem.setOnAction(e -> showDecoderTimings());
+
+        MenuItem memoryUsageItem = new MenuItem("Memory Usage...");
+        memoryUsageItem.setOnAction(e -> showMemoryUsage());
+
+        CheckMenuItem metricsOverlayItem = new CheckMenuItem("Performance Overlay");
+        metricsOverlayItem.selectedProperty().bindBidirectional(metricsOverlay.visibleProperty());
+
+        MenuItem exportMetricsItem = new MenuItem("Export Metrics...");
+        exportMetricsItem.setOnAction(e -> exportMetrics());
+
+        CheckMenuItem flightRecordingItem = new CheckMenuItem("Flight Recording");
+        flightRecordingItem.setOnAction(e -> flightRecordingItem.setSelected(toggleFlightRecording()));
+
+        viewMenu.getItems().addAll(zoomInItem, zoomOutItem, fitToWindowItem, slideshowItem, compareItem,
+                new SeparatorMenuItem(), sortMenu, showMenu,
+                new SeparatorMenuItem(), toggleAIPanelItem, toggleHistogramItem, decoderTimingsItem,
+                memoryUsageItem, metricsOverlayItem, exportMetricsItem, flightRecordingItem);
 
         // AI Menu
         Menu aiMenu = new Menu("AI");
@@ -217,7 +370,7 @@ public class MainWindow {
 
         aiMenu.getItems().add(configureAPIItem);
 
-        menuBar.getMenus().addAll(fileMenu, editMenu, viewMenu, aiMenu);
+        menuBar.getMenus().addAll(fileMenu, editMenu, filtersMenu, viewMenu, aiMenu);
         root.setTop(menuBar);
     }
 
@@ -225,27 +378,144 @@ public class MainWindow {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open Image");
         fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("All Images", "*.png", "*.jpg", "*.jpeg", "*.gif", "*.bmp", "*.webp"),
+                new FileChooser.ExtensionFilter("All Images", "*.png", "*.jpg", "*.jpeg", "*.gif", "*.bmp", "*.webp",
+                        "*.tif", "*.tiff"),
                 new FileChooser.ExtensionFilter("PNG", "*.png"),
                 new FileChooser.ExtensionFilter("JPEG", "*.jpg", "*.jpeg"),
                 new FileChooser.ExtensionFilter("GIF", "*.gif"),
                 new FileChooser.ExtensionFilter("BMP", "*.bmp"),
+                new FileChooser.ExtensionFilter("TIFF", "*.tif", "*.tiff"),
                 new FileChooser.ExtensionFilter("WebP", "*.webp"));
 
         File file = fileChooser.showOpenDialog(stage);
         if (file != null) {
-            if (imageManager.loadImage(file, true)) {
+            openFile(file);
+        }
+    }
+
+    private void openFile(File file) {
+        if (imageManager.loadImage(file, true)) {
+            imageCanvas.displayImage();
+            imageCanvas.fitToWindow();
+            updateTitle();
+            thumbnailBar.updateThumbnails();
+
+            // Catalog new or changed files, then re-sort with their metadata
+            catalog.refreshFolder(file.getAbsoluteFile().getParentFile()).thenAccept(count -> {
+                if (count > 0) {
+                    javafx.application.Platform.runLater(this::applyDirectoryOrder);
+                }
+            });
+        }
+    }
+
+    private void startSlideshow() {
+        java.util.List<File> files = new java.util.ArrayList<>(imageManager.getDirectoryFiles());
+        int start = files.indexOf(imageManager.getCurrentFile());
+        if (files.isEmpty() || start < 0) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+        // Continue from the last slide shown
+        new Slideshow(files, start, file -> {
+            if (!file.equals(imageManager.getCurrentFile()) && imageManager.loadImage(file, true)) {
                 imageCanvas.displayImage();
                 imageCanvas.fitToWindow();
                 updateTitle();
                 thumbnailBar.updateThumbnails();
             }
+        }).show();
+    }
+
+    private void startCompare() {
+        java.util.List<File> files = imageManager.getDirectoryFiles();
+        int start = files.indexOf(imageManager.getCurrentFile());
+        if (start < 0) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+        if (files.size() < 2) {
+            showAlert("Compare", "The folder has only one image.");
+            return;
+        }
+        ChoiceDialog<Integer> dialog = new ChoiceDialog<>(Math.min(2, files.size()),
+                java.util.stream.IntStream.rangeClosed(2, Math.min(4, files.size())).boxed()
+                        .collect(java.util.stream.Collectors.toList()));
+        dialog.setTitle("Compare");
+        dialog.setHeaderText("Compare the current image with the images after it");
+        dialog.setContentText("Number of images:");
+        dialog.showAndWait().ifPresent(count -> {
+            java.util.List<File> compared = new java.util.ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                compared.add(files.get((start + i) % files.size()));
+            }
+            new CompareView(compared, file -> {
+                if (!file.equals(imageManager.getCurrentFile()) && imageManager.loadImage(file, true)) {
+                    imageCanvas.displayImage();
+                    imageCanvas.fitToWindow();
+                    updateTitle();
+                    thumbnailBar.updateThumbnails();
+                }
+            }).show();
+        });
+    }
+
+    private void applyDirectoryOrder() {
+        imageManager.setDirectoryOrder(catalog.sortKey(sortKey),
+                portraitFilter == null ? f -> true : catalog.orientationFilter(portraitFilter));
+        thumbnailBar.updateThumbnails();
+    }
+
+    private HashIndex getHashIndex() {
+        if (hashIndex == null) {
+            hashIndex = new HashIndex(new File(AppDirectories.getDataDirectory(), "hash-index.bin"));
+        }
+        return hashIndex;
+    }
+
+    private void findSimilarImages() {
+        File file = imageManager.getCurrentFile();
+        if (file == null) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+        new SimilarImagesDialog(getHashIndex(), file, this::openFile).show();
+    }
+
+    private void indexFolder() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Add Folder to Similarity Index");
+        File folder = chooser.showDialog(stage);
+        if (folder != null) {
+            getHashIndex().indexFolder(folder).thenAccept(count -> javafx.application.Platform.runLater(
+                    () -> showAlert("Indexing Complete", count + " new or changed images indexed in "
+                            + folder.getName() + ".")));
         }
     }
 
+    /**
+     * Ask before showing another page would throw away edits to this one.
+     */
+    private boolean confirmDiscardPageEdits() {
+        if (!imageManager.hasUnsavedChanges()) {
+            return true;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Unsaved Changes");
+        alert.setHeaderText("This page has unsaved changes");
+        alert.setContentText("Showing another page discards them and the undo history. Continue?");
+        alert.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+        return alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
+
     private void updateTitle() {
         File file = imageManager.getCurrentFile();
-        if (file != null) {
+        FrameSequence pages = imageManager.getFrameSequence();
+        if (file != null && pages != null && !pages.isAnimated()) {
+            int count = pages.getFrameCount();
+            stage.setTitle("PhotoViewer - " + file.getName() + " (page " + (imageManager.getPageIndex() + 1)
+                    + (count > 0 ? " of " + count : "") + ")");
+        } else if (file != null) {
             stage.setTitle("PhotoViewer - " + file.getName());
         } else {
             stage.setTitle("PhotoViewer");
@@ -265,8 +535,8 @@ public class MainWindow {
         ButtonType resizeButtonType = new ButtonType("Resize", ButtonBar.ButtonData.OK_DONE);
         dialog.getDialogPane().getButtonTypes().addAll(resizeButtonType, ButtonType.CANCEL);
 
-        TextField widthField = new TextField(String.valueOf(imageManager.getCurrentImage().getWidth()));
-        TextField heightField = new TextField(String.valueOf(imageManager.getCurrentImage().getHeight()));
+        TextField widthField = new TextField(String.valueOf(imageManager.getDisplayWidth()));
+        TextField heightField = new TextField(String.valueOf(imageManager.getDisplayHeight()));
 
         javafx.scene.layout.GridPane grid = new javafx.scene.layout.GridPane();
         grid.setHgap(10);
@@ -299,6 +569,135 @@ public class MainWindow {
         });
     }
 
+    private void showImageInfo() {
+        File file = imageManager.getCurrentFile();
+        if (file == null || imageManager.getCurrentImage() == null) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Image Info");
+        dialog.setHeaderText(file.getName());
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        java.util.Map<String, String> info = new java.util.LinkedHashMap<>();
+        info.put("Folder", file.getAbsoluteFile().getParent());
+        info.put("Dimensions", imageManager.getDisplayWidth() + " x " + imageManager.getDisplayHeight());
+        info.put("File size", String.format("%.1f KB", file.length() / 1024.0));
+        info.putAll(imageManager.getMetadata().getSummary());
+
+        javafx.scene.layout.GridPane grid = new javafx.scene.layout.GridPane();
+        grid.setHgap(10);
+        grid.setVgap(6);
+        int row = 0;
+        for (java.util.Map.Entry<String, String> entry : info.entrySet()) {
+            Label value = new Label(entry.getValue());
+            value.setWrapText(true);
+            value.setMaxWidth(360);
+            grid.add(new Label(entry.getKey() + ":"), 0, row);
+            grid.add(value, 1, row++);
+        }
+
+        ScrollPane scroll = new ScrollPane(grid);
+        scroll.setFitToWidth(true);
+        scroll.setPrefViewportHeight(Math.min(400, info.size() * 24));
+        dialog.getDialogPane().setContent(scroll);
+        dialog.showAndWait();
+    }
+
+    private void showDecoderTimings() {
+        StringBuilder text = new StringBuilder();
+        for (Metrics.TimerSnapshot timer : Metrics.get().snapshot().timers) {
+            if (timer.getName().startsWith(DecoderRegistry.TIMER_PREFIX) && timer.getCount() > 0) {
+                text.append(String.format("%s: %d images, average %.1f ms, slowest %.1f ms%n",
+                        timer.getName().substring(DecoderRegistry.TIMER_PREFIX.length()), timer.getCount(),
+                        timer.getMeanMillis(), timer.getMaxMillis()));
+            }
+        }
+        showAlert("Decoder Timings", text.length() == 0 ? "No images decoded yet." : text.toString().trim());
+    }
+
+    private void showMemoryUsage() {
+        MemoryGovernor governor = MemoryGovernor.get();
+        StringBuilder text = new StringBuilder();
+        for (MemoryGovernor.Usage usage : governor.getUsage()) {
+            text.append(String.format("%s: %.1f MB%n", usage.name, usage.bytes / 1048576.0));
+        }
+        text.append(String.format("%nTotal %.1f MB of a %.1f MB budget", governor.getTrackedBytes() / 1048576.0,
+                governor.getBudget() / 1048576.0));
+        showAlert("Memory Usage", text.toString());
+    }
+
+    private void exportMetrics() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Metrics");
+        fileChooser.setInitialFileName("metrics.json");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON", "*.json"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file != null) {
+            try {
+                Metrics.get().exportJson(file);
+            } catch (java.io.IOException e) {
+                showAlert("Export Failed", "Could not write metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start a flight recording, or stop it and save it.
+     *
+     * @return Whether a recording is running afterwards
+     */
+    private boolean toggleFlightRecording() {
+        FlightRecording recording = FlightRecording.get();
+        try {
+            if (!recording.isRunning()) {
+                recording.start();
+                return true;
+            }
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Save Flight Recording");
+            fileChooser.setInitialFileName("photoviewer.jfr");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Flight Recording", "*.jfr"));
+            recording.stop(fileChooser.showSaveDialog(stage));
+        } catch (java.io.IOException | RuntimeException e) {
+            showAlert("Flight Recording Failed", e.getMessage());
+        }
+        return recording.isRunning();
+    }
+
+    private void showBlurDialog() {
+        if (imageManager.getCurrentImage() == null) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+
+        TextInputDialog dialog = new TextInputDialog("2.0");
+        dialog.setTitle("Gaussian Blur");
+        dialog.setHeaderText("Enter blur radius (standard deviation in pixels):");
+        dialog.showAndWait().ifPresent(text -> {
+            try {
+                double sigma = Double.parseDouble(text);
+                if (sigma > 0) {
+                    applyFilter(FilterEngine.gaussianBlur(Math.min(sigma, 100)));
+                }
+            } catch (NumberFormatException e) {
+                showAlert("Invalid Radius", "Please enter a number.");
+            }
+        });
+    }
+
+    private void applyFilter(ImageFilter filter) {
+        if (imageManager.getCurrentImage() == null) {
+            showAlert("No Image", "Please open an image first.");
+            return;
+        }
+        imageCanvas.applyCurrentDrawing();
+        imageManager.applyFilter(filter);
+        imageCanvas.displayImage();
+    }
+
     private void showAlert(String title, String content) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
@@ -313,6 +712,39 @@ public class MainWindow {
 
     public void show() {
         stage.show();
+        javafx.application.Platform.runLater(this::offerRecovery);
+    }
+
+    /**
+     * Offer to restore edits left unsaved by a crash, then start saving the
+     * session for recovery.
+     */
+    private void offerRecovery() {
+        File recoveryFile = new File(AppDirectories.getDataDirectory(), "recovery.bin");
+        SessionAutosave.Recovery recovery = recoveryFile.isFile() ? SessionAutosave.load(recoveryFile) : null;
+        if (recovery != null) {
+            String name = recovery.source != null ? recovery.source.getName() : "an unsaved image";
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+            alert.setTitle("Recover Edits");
+            alert.setHeaderText("PhotoViewer did not close normally");
+            alert.setContentText("Recover the unsaved edits to " + name + " from "
+                    + java.text.DateFormat.getDateTimeInstance().format(new java.util.Date(recovery.savedAt)) + "?");
+            alert.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+            if (alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
+                imageManager.recover(recovery);
+                imageCanvas.displayImage();
+                imageCanvas.fitToWindow();
+                updateTitle();
+                thumbnailBar.updateThumbnails();
+            } else {
+                recovery = null;
+            }
+        }
+        if (recovery == null && recoveryFile.isFile() && !recoveryFile.delete()) {
+            System.err.println("Could not delete recovery file: " + recoveryFile);
+        }
+        // A recovered session is written again at the first checkpoint
+        imageManager.enableAutosave(recoveryFile);
     }
 
     /**
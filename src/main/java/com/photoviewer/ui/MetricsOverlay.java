@@ -0,0 +1,50 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.metrics.Metrics;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.util.Duration;
+
+/**
+ * Semi-transparent label drawn over the canvas that shows the application
+ * {@link Metrics}. It only refreshes while visible.
+ */
+public class MetricsOverlay extends Label {
+    private static final Duration REFRESH_INTERVAL = Duration.millis(500);
+
+    private final Timeline refresher = new Timeline(new KeyFrame(REFRESH_INTERVAL, e -> refresh()));
+
+    public MetricsOverlay() {
+        setMouseTransparent(true);
+        setPadding(new Insets(6, 8, 6, 8));
+        setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: #e0e0e0; "
+                + "-fx-font-size: 11px; -fx-font-family: monospace;");
+        refresher.setCycleCount(Timeline.INDEFINITE);
+        setVisible(false);
+        visibleProperty().addListener((obs, wasVisible, visible) -> {
+            if (visible) {
+                refresh();
+                refresher.play();
+            } else {
+                refresher.stop();
+            }
+        });
+    }
+
+    private void refresh() {
+        Metrics.Snapshot snapshot = Metrics.get().snapshot();
+        StringBuilder text = new StringBuilder(String.format("%-18s %6s %8s %8s %8s %9s", "", "count", "p50 ms",
+                "p95 ms", "max ms", "alloc MB"));
+        for (Metrics.TimerSnapshot timer : snapshot.timers) {
+            text.append(String.format("%n%-18s %6d %8.1f %8.1f %8.1f %9.1f", timer.getName(), timer.getCount(),
+                    timer.getP50Millis(), timer.getP95Millis(), timer.getMaxMillis(),
+                    timer.getAllocatedBytes() / 1048576.0));
+        }
+        for (java.util.Map.Entry<String, Long> counter : snapshot.counters.entrySet()) {
+            text.append(String.format("%n%-18s %d", counter.getKey(), counter.getValue()));
+        }
+        setText(text.toString());
+    }
+}
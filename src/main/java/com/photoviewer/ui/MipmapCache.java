@@ -0,0 +1,195 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.MemoryGovernor;
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of successively half-resolution copies of the current image.
+ * Levels are built in the background whenever the image changes so that the
+ * canvas can draw zoomed-out views from a level close to the screen size
+ * instead of downscaling the full image every frame.
+ */
+public class MipmapCache {
+    // Images smaller than this along both axes are cheap enough to draw directly
+    private static final int MIN_LEVEL_SIZE = 128;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "mipmap-builder");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Runnable onLevelReady;
+
+    private BufferedImage source;
+    private long sourceVersion = -1;
+    private AtomicReferenceArray<Image> levels = new AtomicReferenceArray<>(0);
+    private Future<?> pending;
+
+    /**
+     * @param onLevelReady Called on the JavaFX thread whenever a new level
+     *                     becomes available
+     */
+    public MipmapCache(Runnable onLevelReady) {
+        this.onLevelReady = onLevelReady;
+        MemoryGovernor.get().register("Mipmaps", MemoryGovernor.Priority.CACHE, new MemoryGovernor.Pool() {
+            @Override
+            public long getBytes() {
+                AtomicReferenceArray<Image> current = levels;
+                long total = 0;
+                for (int k = 0; k < current.length(); k++) {
+                    total += MemoryGovernor.bytesOf(current.get(k));
+                }
+                return total;
+            }
+
+            @Override
+            public long trim(long bytes) {
+                return drop();
+            }
+        });
+    }
+
+    /**
+     * Make sure the cache describes the given image, rebuilding all levels in
+     * the background if the image or its version changed.
+     */
+    public void update(BufferedImage image, long version) {
+        if (image == source && version == sourceVersion) {
+            return;
+        }
+        source = image;
+        sourceVersion = version;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+
+        int count = image == null ? 0 : levelCount(image.getWidth(), image.getHeight());
+        AtomicReferenceArray<Image> built = new AtomicReferenceArray<>(count + 1);
+        levels = built;
+        if (count > 0) {
+            pending = executor.submit(() -> buildLevels(image, built));
+        }
+    }
+
+    /**
+     * Get the level that should be used to draw the image at the given zoom.
+     * Level {@code k} is {@code 1 / 2^k} of the full size; level 0 is the full
+     * image and is never stored here.
+     */
+    public static int levelForZoom(double zoom) {
+        if (zoom >= 1.0) {
+            return 0;
+        }
+        // Pick the smallest level that is still at least as large as the
+        // screen footprint, so we never upscale a mipmap
+        return (int) Math.floor(Math.log(1.0 / zoom) / Math.log(2));
+    }
+
+    /**
+     * Get the closest available level image for the requested level, or null
+     * if the full image should be used.
+     */
+    public Image getLevel(int level) {
+        AtomicReferenceArray<Image> current = levels;
+        for (int k = Math.min(level, current.length() - 1); k > 0; k--) {
+            Image image = current.get(k);
+            if (image != null) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the closest available level that is smaller than the requested one,
+     * or null if none has been built yet. Used while animating, when drawing a
+     * slightly blurry frame is preferable to blocking.
+     */
+    public Image getCoarserLevel(int level) {
+        AtomicReferenceArray<Image> current = levels;
+        for (int k = Math.max(level, 1); k < current.length(); k++) {
+            Image image = current.get(k);
+            if (image != null) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop all levels, e.g. to release memory.
+     */
+    public void clear() {
+        update(null, -1);
+    }
+
+    /**
+     * Drop the levels of the current image without rebuilding them; the
+     * canvas draws from the full image until the image changes.
+     *
+     * @return The number of bytes released
+     */
+    private long drop() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        AtomicReferenceArray<Image> dropped = levels;
+        levels = new AtomicReferenceArray<>(0);
+        long released = 0;
+        for (int k = 0; k < dropped.length(); k++) {
+            released += MemoryGovernor.bytesOf(dropped.get(k));
+        }
+        return released;
+    }
+
+    private static int levelCount(int width, int height) {
+        int count = 0;
+        int w = width;
+        int h = height;
+        while (Math.max(w, h) > MIN_LEVEL_SIZE && Math.min(w, h) > 1) {
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+            count++;
+        }
+        return count;
+    }
+
+    private void buildLevels(BufferedImage image, AtomicReferenceArray<Image> target) {
+        BufferedImage previous = image;
+        for (int k = 1; k < target.length(); k++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            previous = halve(previous);
+            target.set(k, SwingFXUtils.toFXImage(previous, null));
+            Platform.runLater(onLevelReady);
+        }
+    }
+
+    /**
+     * Downscale by exactly two; bilinear sampling at this ratio averages each
+     * 2x2 block of source pixels.
+     */
+    static BufferedImage halve(BufferedImage src) {
+        int w = Math.max(1, src.getWidth() / 2);
+        int h = Math.max(1, src.getHeight() / 2);
+        BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = dst.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(src, 0, 0, w, h, null);
+        g.dispose();
+        return dst;
+    }
+}
@@ -0,0 +1,65 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.metrics.LatencyHistogram;
+import com.photoviewer.metrics.Metrics;
+import javafx.animation.AnimationTimer;
+
+/**
+ * Coalesces repaint requests so that any number of invalidations between two
+ * JavaFX pulses result in at most one render. Render times are recorded
+ * under a named {@link Metrics} timer.
+ */
+public class RenderScheduler extends AnimationTimer {
+    private final Runnable renderer;
+    private final Metrics.Timer frameTimes;
+
+    private boolean dirty = false;
+    private boolean running = false;
+
+    /**
+     * @param metric Name of the timer for render times; views of the same
+     *               kind share one
+     */
+    public RenderScheduler(Runnable renderer, String metric) {
+        this.renderer = renderer;
+        this.frameTimes = Metrics.get().timer(metric);
+    }
+
+    /**
+     * Mark the view dirty; it will be rendered on the next pulse.
+     * Must be called on the JavaFX application thread.
+     */
+    public void requestRender() {
+        dirty = true;
+        if (!running) {
+            running = true;
+            start();
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        if (!dirty) {
+            // Nothing to draw, stop listening to pulses until the next request
+            running = false;
+            stop();
+            return;
+        }
+
+        dirty = false;
+        Metrics.Sample sample = Metrics.get().start(frameTimes);
+        try {
+            renderer.run();
+        } finally {
+            sample.stop();
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes.getLatency();
+    }
+}
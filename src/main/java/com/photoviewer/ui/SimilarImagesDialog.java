@@ -0,0 +1,93 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.catalog.HashIndex;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.VBox;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lists images that look like the current one. The current folder is
+ * indexed first; matches come from every folder indexed so far.
+ */
+public class SimilarImagesDialog {
+    // pHash bits that may differ for two images to count as similar
+    private static final int MAX_DISTANCE = 10;
+
+    private final HashIndex index;
+    private final File current;
+    private final Consumer<File> onOpen;
+
+    public SimilarImagesDialog(HashIndex index, File current, Consumer<File> onOpen) {
+        this.index = index;
+        this.current = current;
+        this.onOpen = onOpen;
+    }
+
+    public void show() {
+        Dialog<File> dialog = new Dialog<>();
+        dialog.setTitle("Similar Images");
+        dialog.setHeaderText("Images similar to " + current.getName() + ":");
+
+        ButtonType openButtonType = new ButtonType("Open", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(openButtonType, ButtonType.CLOSE);
+
+        ListView<HashIndex.Match> list = new ListView<>();
+        list.setPrefSize(480, 360);
+        list.setPlaceholder(new Label("Indexing folder..."));
+        list.setCellFactory(view -> new ListCell<>() {
+            private final ImageView thumbnail = new ImageView();
+
+            @Override
+            protected void updateItem(HashIndex.Match match, boolean empty) {
+                super.updateItem(match, empty);
+                if (empty || match == null) {
+                    setText(null);
+                    setGraphic(null);
+                    return;
+                }
+                thumbnail.setImage(new Image(match.file.toURI().toString(), 64, 48, true, true, true));
+                setGraphic(thumbnail);
+                setText(match.file.getName() + "\n" + match.file.getParent()
+                        + "\ndistance " + match.distance + (match.distance == 0 ? " (duplicate)" : ""));
+            }
+        });
+        list.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2 && list.getSelectionModel().getSelectedItem() != null) {
+                dialog.setResult(list.getSelectionModel().getSelectedItem().file);
+                dialog.close();
+            }
+        });
+
+        VBox content = new VBox(list);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.setResultConverter(button -> {
+            HashIndex.Match selected = list.getSelectionModel().getSelectedItem();
+            return button == openButtonType && selected != null ? selected.file : null;
+        });
+
+        index.indexFolder(current.getAbsoluteFile().getParentFile())
+                .thenCompose(count -> index.findSimilar(current, MAX_DISTANCE))
+                .whenComplete((matches, error) -> Platform.runLater(() -> showMatches(list, matches, error)));
+
+        dialog.showAndWait().ifPresent(onOpen);
+    }
+
+    private void showMatches(ListView<HashIndex.Match> list, List<HashIndex.Match> matches, Throwable error) {
+        if (error != null) {
+            System.err.println("Error finding similar images: " + error.getMessage());
+            list.setPlaceholder(new Label("Could not search for similar images."));
+        } else if (matches.isEmpty()) {
+            list.setPlaceholder(new Label("No similar images found among " + index.size() + " indexed files."));
+        } else {
+            list.getItems().setAll(matches);
+        }
+    }
+}
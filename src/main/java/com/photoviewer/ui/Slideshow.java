@@ -0,0 +1,319 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.DecoderRegistry;
+import com.photoviewer.image.ExifReader;
+import com.photoviewer.image.ImageOperations;
+import com.photoviewer.image.MemoryGovernor;
+import com.photoviewer.image.Orientation;
+import javafx.animation.AnimationTimer;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Full-screen slideshow over the files of the current folder.
+ * <p>
+ * Upcoming slides are decoded on a background thread and scaled to the
+ * screen ahead of the time they are due, starting early enough for the
+ * decode time measured so far. When a full decode would miss its deadline
+ * the file is decoded subsampled at screen resolution instead. Slides are
+ * crossfaded from pre-scaled images, so the fade only blends two
+ * screen-sized images per frame.
+ */
+public class Slideshow {
+    private static final long INTERVAL_NANOS = 4_000_000_000L;
+    private static final long FADE_NANOS = 600_000_000L;
+    // Slides decoded ahead of the one on screen
+    private static final int LOOKAHEAD = 2;
+    // Start decoding this many estimated decode times before the deadline
+    private static final double SAFETY_FACTOR = 2.0;
+
+    private final List<File> files;
+    private final Consumer<File> onClose;
+    private final Stage stage = new Stage();
+    private final Canvas canvas = new Canvas();
+    private final Map<Integer, CompletableFuture<Slide>> pending = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "slideshow-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            step(now);
+        }
+    };
+    private final MemoryGovernor.Pool decodedAhead = new MemoryGovernor.Pool() {
+        @Override
+        public long getBytes() {
+            long total = 0;
+            for (CompletableFuture<Slide> slide : pending.values()) {
+                total += MemoryGovernor.bytesOf(decoded(slide));
+            }
+            return total;
+        }
+
+        @Override
+        public long trim(long bytes) {
+            // Keep the next slide; later ones are decoded again when due
+            int next = (index + 1) % files.size();
+            long released = 0;
+            Iterator<Map.Entry<Integer, CompletableFuture<Slide>>> it = pending.entrySet().iterator();
+            while (released < bytes && it.hasNext()) {
+                Map.Entry<Integer, CompletableFuture<Slide>> entry = it.next();
+                Image image = decoded(entry.getValue());
+                if (entry.getKey() != next && image != null) {
+                    released += MemoryGovernor.bytesOf(image);
+                    it.remove();
+                }
+            }
+            return released;
+        }
+    };
+
+    private int index;
+    private Slide current;
+    private Slide previous;
+    private long shownAt;
+    private long nextDeadline;
+    // Measured cost of a full decode and scale, per byte of file; 0 until
+    // the first full decode
+    private volatile double nanosPerByte;
+
+    /**
+     * A decoded slide scaled to fit the screen.
+     */
+    private static class Slide {
+        final File file;
+        final Image image;
+
+        Slide(File file, Image image) {
+            this.file = file;
+            this.image = image;
+        }
+    }
+
+    /**
+     * @param files   The files to show, in order
+     * @param start   Index of the first file
+     * @param onClose Called with the file on screen when the show ends
+     */
+    public Slideshow(List<File> files, int start, Consumer<File> onClose) {
+        this.files = files;
+        this.index = start;
+        this.onClose = onClose;
+
+        StackPane root = new StackPane(canvas);
+        root.setStyle("-fx-background-color: black;");
+        canvas.widthProperty().bind(root.widthProperty());
+        canvas.heightProperty().bind(root.heightProperty());
+        canvas.widthProperty().addListener((obs, oldVal, newVal) -> render(System.nanoTime()));
+        canvas.heightProperty().addListener((obs, oldVal, newVal) -> render(System.nanoTime()));
+        Scene scene = new Scene(root, Color.BLACK);
+        scene.setOnKeyPressed(e -> {
+            switch (e.getCode()) {
+                case ESCAPE:
+                    stage.close();
+                    break;
+                case SPACE:
+                case RIGHT:
+                    // Advance as soon as the next slide is ready
+                    nextDeadline = 0;
+                    break;
+                default:
+                    break;
+            }
+        });
+        scene.setOnMouseClicked(e -> stage.close());
+        stage.setScene(scene);
+        stage.setFullScreenExitKeyCombination(KeyCombination.NO_MATCH);
+        stage.setFullScreenExitHint("");
+        stage.setOnHidden(e -> {
+            MemoryGovernor.get().unregister(decodedAhead);
+            timer.stop();
+            executor.shutdownNow();
+            onClose.accept(current != null ? current.file : files.get(index));
+        });
+    }
+
+    public void show() {
+        MemoryGovernor.get().register("Slideshow decode-ahead", MemoryGovernor.Priority.PREFETCH, decodedAhead);
+        stage.setFullScreen(true);
+        stage.show();
+        // The first slide is wanted now
+        pending.put(index, schedule(index, System.nanoTime()));
+        timer.start();
+    }
+
+    private void step(long now) {
+        boolean changed = false;
+        if (current == null || now >= nextDeadline && files.size() > 1) {
+            int next = current == null ? index : (index + 1) % files.size();
+            CompletableFuture<Slide> slide = pending.get(next);
+            // Until it is ready the current slide stays up
+            if (slide != null && slide.isDone()) {
+                pending.remove(next);
+                index = next;
+                changed = show(slide.exceptionally(error -> null).join(), now);
+            }
+        }
+        scheduleAhead(now);
+        if (changed || previous != null) {
+            render(now);
+        }
+    }
+
+    /**
+     * Put a decoded slide on screen and fade to it.
+     *
+     * @return false if the file could not be decoded and was skipped
+     */
+    private boolean show(Slide slide, long now) {
+        if (slide == null) {
+            if (current == null) {
+                // Nothing on screen yet; try the next file straight away
+                index = (index + 1) % files.size();
+                pending.putIfAbsent(index, schedule(index, now));
+            }
+            nextDeadline = now;
+            return false;
+        }
+        previous = current;
+        current = slide;
+        shownAt = now;
+        nextDeadline = now + INTERVAL_NANOS;
+        return true;
+    }
+
+    /**
+     * Start decoding the upcoming slides whose deadline is near enough for
+     * their estimated decode time.
+     */
+    private void scheduleAhead(long now) {
+        for (int k = 1; k <= LOOKAHEAD && k < files.size(); k++) {
+            int i = (index + k) % files.size();
+            if (pending.containsKey(i)) {
+                continue;
+            }
+            long deadline = nextDeadline + (k - 1) * INTERVAL_NANOS;
+            long estimate = (long) (nanosPerByte * files.get(i).length() * SAFETY_FACTOR);
+            if (k == 1 || deadline - now <= estimate) {
+                pending.put(i, schedule(i, deadline));
+            }
+        }
+    }
+
+    private CompletableFuture<Slide> schedule(int i, long deadline) {
+        File file = files.get(i);
+        // The canvas may not have its full-screen size yet
+        javafx.geometry.Rectangle2D screen = Screen.getPrimary().getBounds();
+        int screenWidth = (int) screen.getWidth();
+        int screenHeight = (int) screen.getHeight();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return decode(file, deadline, screenWidth, screenHeight);
+            } catch (IOException e) {
+                System.err.println("Error loading slide: " + e.getMessage());
+                return null;
+            }
+        }, executor);
+    }
+
+    /**
+     * Decode a file and scale it to fit the screen, at preview resolution if
+     * a full decode is expected to miss the deadline.
+     */
+    private Slide decode(File file, long deadline, int screenWidth, int screenHeight) throws IOException {
+        long start = System.nanoTime();
+        boolean preview = nanosPerByte > 0 && start + nanosPerByte * file.length() > deadline;
+        BufferedImage image = DecoderRegistry.get().decode(file,
+                preview ? Math.min(screenWidth, screenHeight) : 0);
+        if (image == null) {
+            return null;
+        }
+        int orientation = ExifReader.read(file).getOrientation();
+        image = ImageOperations.applyOrientation(fitTo(image, orientation, screenWidth, screenHeight), orientation);
+        Image fx = SwingFXUtils.toFXImage(image, null);
+        if (!preview) {
+            double measured = (double) (System.nanoTime() - start) / Math.max(1, file.length());
+            nanosPerByte = nanosPerByte == 0 ? measured : 0.7 * nanosPerByte + 0.3 * measured;
+        }
+        return new Slide(file, fx);
+    }
+
+    /**
+     * Scale an image down so that it fits the screen once its orientation is
+     * applied.
+     */
+    private static BufferedImage fitTo(BufferedImage image, int orientation, int screenWidth, int screenHeight) {
+        int displayWidth = Orientation.displayWidth(orientation, image.getWidth(), image.getHeight());
+        int displayHeight = Orientation.displayHeight(orientation, image.getWidth(), image.getHeight());
+        double scale = Math.min((double) screenWidth / displayWidth, (double) screenHeight / displayHeight);
+        if (scale >= 1.0) {
+            return image;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Get the image of a slide that has finished decoding, or null.
+     */
+    private static Image decoded(CompletableFuture<Slide> slide) {
+        Slide done = slide.isDone() ? slide.exceptionally(error -> null).join() : null;
+        return done != null ? done.image : null;
+    }
+
+    private void render(long now) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (current == null) {
+            return;
+        }
+        double fade = Math.min(1.0, (double) (now - shownAt) / FADE_NANOS);
+        if (previous != null && fade < 1.0) {
+            gc.setGlobalAlpha(1.0 - fade);
+            drawCentered(gc, previous.image);
+            gc.setGlobalAlpha(fade);
+        } else {
+            previous = null;
+        }
+        drawCentered(gc, current.image);
+        gc.setGlobalAlpha(1.0);
+    }
+
+    private void drawCentered(GraphicsContext gc, Image image) {
+        // Slides are already screen-sized, so they are drawn without scaling
+        gc.drawImage(image, Math.floor((canvas.getWidth() - image.getWidth()) / 2),
+                Math.floor((canvas.getHeight() - image.getHeight()) / 2));
+    }
+}
@@ -1,6 +1,7 @@
 package com.photoviewer.ui;
 
 import com.photoviewer.image.ImageManager;
+import com.photoviewer.image.MemoryGovernor;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
@@ -39,6 +40,19 @@ public class ThumbnailBar extends HBox {
                 createLabeledView("Next", nextView));
 
         updateThumbnails();
+
+        MemoryGovernor.get().register("Thumbnails", MemoryGovernor.Priority.VISIBLE, new MemoryGovernor.Pool() {
+            @Override
+            public long getBytes() {
+                return MemoryGovernor.bytesOf(prevView.getImage()) + MemoryGovernor.bytesOf(currView.getImage())
+                        + MemoryGovernor.bytesOf(nextView.getImage());
+            }
+
+            @Override
+            public long trim(long bytes) {
+                return 0;
+            }
+        });
     }
 
     private ImageView createThumbnailView() {
@@ -0,0 +1,269 @@
+package com.photoviewer.ui;
+
+import com.photoviewer.image.MemoryGovernor;
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of display tiles cut from decoded images, shared by several
+ * viewports. Each image is split into square tiles at every mipmap level;
+ * only tiles that a viewport asks for are converted, on a background thread,
+ * and the least recently used ones are dropped once the cache is over its
+ * memory budget.
+ * <p>
+ * Requests are served newest first, so tiles that scrolled into view last
+ * are converted before those left behind by a fast pan.
+ * <p>
+ * The decoded images and their levels are reported to the
+ * {@link MemoryGovernor} along with the tiles. When it asks for memory, the
+ * cache gives up tiles first and then the reduced levels, which are built
+ * again when needed.
+ */
+public class TileCache {
+    public static final int TILE_SIZE = 256;
+
+    private final long maxBytes;
+    private final AtomicInteger nextSourceId = new AtomicInteger();
+    // Guarded by this
+    private final LinkedHashMap<Long, Image> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Long> loading = new HashSet<>();
+    private final Set<Source> sources = new HashSet<>();
+    private long bytes;
+    private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable task) {
+                    return offerFirst(task);
+                }
+            }, r -> {
+                Thread t = new Thread(r, "tile-loader");
+                t.setDaemon(true);
+                return t;
+            });
+    private final MemoryGovernor.Pool pool = new MemoryGovernor.Pool() {
+        @Override
+        public long getBytes() {
+            synchronized (TileCache.this) {
+                long total = bytes;
+                for (Source source : sources) {
+                    total += source.getBytes();
+                }
+                return total;
+            }
+        }
+
+        @Override
+        public long trim(long wanted) {
+            synchronized (TileCache.this) {
+                long before = bytes;
+                evict(Math.max(0, bytes - wanted), null);
+                long released = before - bytes;
+                for (Source source : sources) {
+                    if (released >= wanted) {
+                        break;
+                    }
+                    released += source.dropLevels();
+                }
+                return released;
+            }
+        }
+    };
+
+    /**
+     * A decoded image and its half-resolution levels, built when first
+     * needed.
+     */
+    public static class Source {
+        final int id;
+        public final int width;
+        public final int height;
+        public final int maxLevel;
+        // Level k is 1 / 2^k of the full size; built by the loader, dropped by trim
+        private final AtomicReferenceArray<BufferedImage> levels;
+
+        Source(int id, BufferedImage image) {
+            this.id = id;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            int count = 0;
+            while (Math.max(width >> count, height >> count) > TILE_SIZE
+                    && Math.min(width >> count, height >> count) > 1) {
+                count++;
+            }
+            this.maxLevel = count;
+            this.levels = new AtomicReferenceArray<>(count + 1);
+            this.levels.set(0, image);
+        }
+
+        BufferedImage level(int k) {
+            BufferedImage level = levels.get(k);
+            if (level == null) {
+                level = MipmapCache.halve(level(k - 1));
+                levels.set(k, level);
+            }
+            return level;
+        }
+
+        long getBytes() {
+            long total = 0;
+            for (int k = 0; k < levels.length(); k++) {
+                total += MemoryGovernor.bytesOf(levels.get(k));
+            }
+            return total;
+        }
+
+        /**
+         * Drop the reduced levels; the full-size image stays.
+         *
+         * @return The number of bytes released
+         */
+        long dropLevels() {
+            long released = 0;
+            for (int k = 1; k < levels.length(); k++) {
+                released += MemoryGovernor.bytesOf(levels.getAndSet(k, null));
+            }
+            return released;
+        }
+    }
+
+    /**
+     * @param maxBytes Memory budget for converted tiles; decoded images are
+     *                 not limited by it
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        MemoryGovernor.get().register("Compare images", MemoryGovernor.Priority.CACHE, pool);
+    }
+
+    public synchronized Source addSource(BufferedImage image) {
+        Source source = new Source(nextSourceId.getAndIncrement(), image);
+        sources.add(source);
+        return source;
+    }
+
+    /**
+     * Get a tile if it has been converted, or null after scheduling its
+     * conversion. onReady runs on the JavaFX thread when the tile is ready.
+     *
+     * @param tx Tile column at the given level
+     * @param ty Tile row at the given level
+     */
+    public Image getTile(Source source, int level, int tx, int ty, Runnable onReady) {
+        long key = key(source, level, tx, ty);
+        synchronized (this) {
+            Image tile = tiles.get(key);
+            if (tile != null || executor.isShutdown() || !loading.add(key)) {
+                return tile;
+            }
+        }
+        executor.execute(() -> {
+            Image tile = null;
+            try {
+                tile = cut(source.level(level), tx, ty);
+            } finally {
+                synchronized (this) {
+                    loading.remove(key);
+                    if (tile != null) {
+                        put(key, tile);
+                    }
+                }
+            }
+            Platform.runLater(onReady);
+        });
+        return null;
+    }
+
+    /**
+     * Get a tile only if it has already been converted.
+     */
+    public synchronized Image getCachedTile(Source source, int level, int tx, int ty) {
+        return tiles.get(key(source, level, tx, ty));
+    }
+
+    /**
+     * Drop a source that is no longer shown, and its tiles.
+     */
+    public synchronized void remove(Source source) {
+        sources.remove(source);
+        Iterator<Map.Entry<Long, Image>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Image> entry = it.next();
+            if ((int) (entry.getKey() >>> 48) == source.id) {
+                bytes -= tileBytes(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all tiles and stop the loader.
+     */
+    public synchronized void close() {
+        MemoryGovernor.get().unregister(pool);
+        executor.shutdownNow();
+        tiles.clear();
+        sources.clear();
+        bytes = 0;
+    }
+
+    private void put(long key, Image tile) {
+        tiles.put(key, tile);
+        bytes += tileBytes(tile);
+        evict(maxBytes, tile);
+    }
+
+    /**
+     * Drop the least recently used tiles until at most limit bytes are held,
+     * keeping the given tile.
+     */
+    private void evict(long limit, Image keep) {
+        Iterator<Image> it = tiles.values().iterator();
+        while (bytes > limit && it.hasNext()) {
+            Image eldest = it.next();
+            if (eldest == keep) {
+                break;
+            }
+            bytes -= tileBytes(eldest);
+            it.remove();
+        }
+    }
+
+    /**
+     * Copy one tile out of a level; edge tiles are smaller.
+     */
+    private static Image cut(BufferedImage level, int tx, int ty) {
+        int x = tx * TILE_SIZE;
+        int y = ty * TILE_SIZE;
+        int w = Math.min(TILE_SIZE, level.getWidth() - x);
+        int h = Math.min(TILE_SIZE, level.getHeight() - y);
+        BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = tile.createGraphics();
+        g.drawImage(level, -x, -y, null);
+        g.dispose();
+        return SwingFXUtils.toFXImage(tile, null);
+    }
+
+    private static long tileBytes(Image tile) {
+        return MemoryGovernor.bytesOf(tile);
+    }
+
+    private static long key(Source source, int level, int tx, int ty) {
+        // 16 bits of source, 8 of level, 20 each of column and row
+        return (long) source.id << 48 | (long) level << 40 | (long) tx << 20 | ty;
+    }
+}
@@ -27,6 +27,9 @@ public class ToolPanel extends VBox {
     private Label brushLabel;
     private Slider brushSlider;
 
+    // Scissors tool UI controls (shown/hidden dynamically)
+    private Button pasteBtn;
+
     public ToolPanel(ImageCanvas canvas, ImageManager imageManager, MainWindow mainWindow) {
         this.canvas = canvas;
         this.imageManager = imageManager;
@@ -77,12 +80,23 @@ public class ToolPanel extends VBox {
                 }
                 canvas.setTool(scissorsTool);
                 canvas.setCanvasCursor(javafx.scene.Cursor.CROSSHAIR);
+                // Show paste button
+                if (!getChildren().contains(pasteBtn)) {
+                    getChildren().add(getChildren().indexOf(scissorsBtn) + 1, pasteBtn);
+                }
             } else {
+                scissorsTool.reset();
                 canvas.setTool(null);
                 canvas.setCanvasCursor(javafx.scene.Cursor.DEFAULT);
+                getChildren().remove(pasteBtn);
+                canvas.displayImage();
             }
         });
 
+        // Paste button (will be added dynamically when scissors is selected)
+        pasteBtn = createButton("Paste");
+        pasteBtn.setOnAction(e -> canvas.pasteSelection());
+
         Separator sep2 = new Separator();
 
         ToggleButton pencilBtn = createToolButton("Pencil");
@@ -91,6 +105,8 @@ public class ToolPanel extends VBox {
             if (pencilBtn.isSelected()) {
                 canvas.setTool(pencilTool);
                 canvas.setCanvasCursor(javafx.scene.Cursor.CROSSHAIR);
+                scissorsTool.reset();
+                getChildren().remove(pasteBtn);
                 // Show color picker and brush controls
                 if (!getChildren().contains(colorPicker)) {
                     int pencilIndex = getChildren().indexOf(pencilBtn);
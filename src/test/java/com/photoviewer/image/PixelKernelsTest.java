@@ -0,0 +1,172 @@
+package com.photoviewer.image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The vector kernels must give the scalar kernels' results. Row lengths
+ * cover vectors with and without a scalar tail, and the pixels include
+ * fully transparent and fully opaque ones. Kernels that accumulate in
+ * float may differ by one level where the vector code fuses a multiply and
+ * add; everything else must match exactly.
+ */
+class PixelKernelsTest {
+    // Lengths around the common lane counts (4, 8, 16), including tails
+    private static final int[] LENGTHS = { 0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 17, 31, 33, 100 };
+    // Elements before the row, so offsets are not vector-aligned
+    private static final int OFFSET = 3;
+
+    private static PixelKernels vector;
+    private final PixelKernels scalar = new ScalarPixelKernels();
+    private final Random random = new Random(42);
+
+    @BeforeAll
+    static void createVectorKernels() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "jdk.incubator.vector is not available");
+        vector = new VectorPixelKernels();
+    }
+
+    @Test
+    void compositeSrcOverMatches() {
+        for (int length : LENGTHS) {
+            int[] src = randomRow(length);
+            int[] dst = randomRow(length);
+            int[] expected = dst.clone();
+            int[] actual = dst.clone();
+            scalar.compositeSrcOver(src, OFFSET, expected, OFFSET, length);
+            vector.compositeSrcOver(src, OFFSET, actual, OFFSET, length);
+            assertClose("compositeSrcOver", length, expected, actual, 1);
+            assertExtremeAlphaExact("compositeSrcOver", src, expected, actual);
+        }
+    }
+
+    @Test
+    void compositeSrcOverOpaqueMatches() {
+        for (int length : LENGTHS) {
+            int[] src = randomRow(length);
+            int[] dst = randomRow(length);
+            int[] expected = dst.clone();
+            int[] actual = dst.clone();
+            scalar.compositeSrcOverOpaque(src, OFFSET, expected, OFFSET, length);
+            vector.compositeSrcOverOpaque(src, OFFSET, actual, OFFSET, length);
+            assertClose("compositeSrcOverOpaque", length, expected, actual, 1);
+            assertExtremeAlphaExact("compositeSrcOverOpaque", src, expected, actual);
+        }
+    }
+
+    @Test
+    void premultiplyRoundTripMatches() {
+        for (int length : LENGTHS) {
+            int[] row = randomRow(length);
+            int[] expected = row.clone();
+            int[] actual = row.clone();
+            scalar.premultiply(expected, OFFSET, length);
+            vector.premultiply(actual, OFFSET, length);
+            assertClose("premultiply", length, expected, actual, 1);
+
+            scalar.unpremultiply(expected, OFFSET, length);
+            vector.unpremultiply(actual, OFFSET, length);
+            assertClose("unpremultiply", length, expected, actual, 1);
+        }
+    }
+
+    @Test
+    void conversionsMatchExactly() {
+        for (int length : LENGTHS) {
+            int[] src = randomRow(length);
+            int[] expected = new int[src.length];
+            int[] actual = new int[src.length];
+            scalar.rgbToArgb(src, OFFSET, expected, OFFSET, length);
+            vector.rgbToArgb(src, OFFSET, actual, OFFSET, length);
+            assertArrayEquals(expected, actual, "rgbToArgb, length " + length);
+
+            byte[] bgr = new byte[(OFFSET + length) * 3];
+            random.nextBytes(bgr);
+            Arrays.fill(expected, 0);
+            Arrays.fill(actual, 0);
+            scalar.bgrToArgb(bgr, OFFSET * 3, expected, OFFSET, length);
+            vector.bgrToArgb(bgr, OFFSET * 3, actual, OFFSET, length);
+            assertArrayEquals(expected, actual, "bgrToArgb, length " + length);
+        }
+    }
+
+    @Test
+    void convolutionsMatch() {
+        float[] kernel = { 0.06f, 0.24f, 0.4f, 0.24f, 0.06f };
+        for (int length : LENGTHS) {
+            int[] src = randomRow(length);
+            int[] expected = new int[src.length];
+            int[] actual = new int[src.length];
+            scalar.convolveHorizontal(src, OFFSET, expected, OFFSET, length, kernel);
+            vector.convolveHorizontal(src, OFFSET, actual, OFFSET, length, kernel);
+            assertClose("convolveHorizontal", length, expected, actual, 1);
+
+            int[][] rows = new int[kernel.length][];
+            int[] offsets = new int[kernel.length];
+            for (int k = 0; k < kernel.length; k++) {
+                rows[k] = randomRow(length);
+                offsets[k] = OFFSET;
+            }
+            scalar.convolveVertical(rows, offsets, expected, OFFSET, length, kernel);
+            vector.convolveVertical(rows, offsets, actual, OFFSET, length, kernel);
+            assertClose("convolveVertical", length, expected, actual, 1);
+        }
+    }
+
+    /**
+     * Random pixels after OFFSET unused elements; a quarter of them are fully
+     * transparent and a quarter fully opaque.
+     */
+    private int[] randomRow(int length) {
+        int[] row = new int[OFFSET + length];
+        for (int i = OFFSET; i < row.length; i++) {
+            int rgb = random.nextInt() & 0xFFFFFF;
+            switch (random.nextInt(4)) {
+                case 0:
+                    row[i] = rgb;
+                    break;
+                case 1:
+                    row[i] = 0xFF000000 | rgb;
+                    break;
+                default:
+                    row[i] = (random.nextInt(254) + 1) << 24 | rgb;
+            }
+        }
+        return row;
+    }
+
+    private static void assertClose(String kernel, int length, int[] expected, int[] actual, int tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int e = (expected[i] >>> shift) & 0xFF;
+                int a = (actual[i] >>> shift) & 0xFF;
+                if (Math.abs(e - a) > tolerance) {
+                    fail(String.format("%s, length %d, pixel %d: expected %08x but was %08x", kernel, length,
+                            i - OFFSET, expected[i], actual[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Transparent source pixels leave the destination alone and opaque ones
+     * replace it, in both implementations.
+     */
+    private static void assertExtremeAlphaExact(String kernel, int[] src, int[] expected, int[] actual) {
+        for (int i = OFFSET; i < src.length; i++) {
+            int alpha = src[i] >>> 24;
+            if ((alpha == 0 || alpha == 255) && expected[i] != actual[i]) {
+                fail(String.format("%s, pixel %d with source alpha %d: expected %08x but was %08x", kernel,
+                        i - OFFSET, alpha, expected[i], actual[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.photoviewer.tools;
+
+import com.photoviewer.image.DrawingLayer;
+import javafx.scene.canvas.GraphicsContext;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The drag path from pointer events to the brush must not allocate once the
+ * buffer has grown to the frame size and the touched tiles exist.
+ */
+class PointerBufferTest {
+    private static final int FRAMES = 200;
+    private static final int SAMPLES_PER_FRAME = 40;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private long threadId;
+
+    @BeforeAll
+    static void findAllocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "allocation counting is not available");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "allocation counting is not enabled");
+    }
+
+    @BeforeEach
+    void warmUpAllocationCounter() {
+        threadId = Thread.currentThread().getId();
+        allocatedBytes();
+    }
+
+    /**
+     * Draws the batch the way PencilTool does, without needing a canvas.
+     */
+    private static class BrushTool implements Tool {
+        final BrushEngine brush = new BrushEngine();
+        final DrawingLayer layer = new DrawingLayer(1024, 1024);
+
+        @Override
+        public void onMousePressed(double x, double y) {
+            brush.beginStroke(layer, 0xFFFF0000, 5, x, y);
+        }
+
+        @Override
+        public void onMouseDragged(double x, double y) {
+            brush.strokeTo(x, y);
+        }
+
+        @Override
+        public void onMouseDragged(PointerBuffer samples) {
+            for (int i = 0; i < samples.size(); i++) {
+                brush.strokeTo(samples.getX(i), samples.getY(i));
+            }
+        }
+
+        @Override
+        public void onMouseReleased(double x, double y) {
+            brush.strokeTo(x, y);
+            brush.endStroke();
+        }
+
+        @Override
+        public void draw(GraphicsContext gc) {
+        }
+
+        @Override
+        public void reset() {
+            brush.cancel();
+        }
+    }
+
+    /**
+     * Counts samples through the default, per-sample batch handling.
+     */
+    private static class CountingTool implements Tool {
+        double sum;
+
+        @Override
+        public void onMousePressed(double x, double y) {
+        }
+
+        @Override
+        public void onMouseDragged(double x, double y) {
+            sum += x + y;
+        }
+
+        @Override
+        public void onMouseReleased(double x, double y) {
+        }
+
+        @Override
+        public void draw(GraphicsContext gc) {
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+
+    @Test
+    void batchedBrushStrokeDoesNotAllocate() {
+        BrushTool tool = new BrushTool();
+        PointerBuffer buffer = new PointerBuffer();
+        // The first stroke grows nothing further but allocates the tiles it touches
+        stroke(tool, buffer);
+
+        long before = allocatedBytes();
+        stroke(tool, buffer);
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(0, allocated, "bytes allocated while dragging");
+    }
+
+    @Test
+    void defaultBatchHandlingDoesNotAllocate() {
+        CountingTool tool = new CountingTool();
+        PointerBuffer buffer = new PointerBuffer();
+        stroke(tool, buffer);
+
+        long before = allocatedBytes();
+        stroke(tool, buffer);
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(0, allocated, "bytes allocated while dragging");
+    }
+
+    @Test
+    void bufferKeepsSamplesInOrderAcrossGrowth() {
+        PointerBuffer buffer = new PointerBuffer();
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(i, -i);
+        }
+        assertEquals(1000, buffer.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, buffer.getX(i));
+            assertEquals(-i, buffer.getY(i));
+        }
+        buffer.clear();
+        assertEquals(0, buffer.size());
+    }
+
+    /**
+     * Feed a circular stroke as ImageCanvas does: samples are buffered as
+     * they arrive and handed over once per frame.
+     */
+    private static void stroke(Tool tool, PointerBuffer buffer) {
+        tool.onMousePressed(512, 312);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (int s = 0; s < SAMPLES_PER_FRAME; s++) {
+                double angle = (frame * SAMPLES_PER_FRAME + s) * 0.002;
+                buffer.add(512 + 200 * Math.sin(angle), 512 - 200 * Math.cos(angle));
+            }
+            tool.onMouseDragged(buffer);
+            buffer.clear();
+        }
+        tool.onMouseReleased(512, 312);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(threadId);
+    }
+}